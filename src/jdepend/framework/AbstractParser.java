@@ -1,9 +1,15 @@
 package jdepend.framework;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The <code>AbstractParser</code> class is the base class
@@ -18,6 +24,7 @@ public abstract class AbstractParser {
 
     private List<ParserListener> parseListeners;
     private PackageFilter filter;
+    private PackageTable packageTable;
     public static boolean DEBUG = false;
 
 
@@ -27,7 +34,8 @@ public abstract class AbstractParser {
 
     public AbstractParser(PackageFilter filter) {
         setFilter(filter);
-        parseListeners = new ArrayList<ParserListener>();
+        parseListeners = new CopyOnWriteArrayList<ParserListener>();
+        packageTable = new PackageTable();
     }
 
     public void addParseListener(ParserListener listener) {
@@ -40,15 +48,70 @@ public abstract class AbstractParser {
      */
     public abstract JavaClass parse(InputStream is) throws IOException;
 
+    /**
+     * Parses the specified class file. The default implementation
+     * parses a stream over the file.
+     */
+    public JavaClass parse(File classFile) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(classFile));
+        try {
+            return parse(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Parses the class file contained in the remaining bytes of the
+     * specified buffer. The default implementation parses a stream
+     * over a copy of the bytes.
+     */
+    public JavaClass parse(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return parse(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Parses the class file contained in the remaining bytes of the
+     * specified buffer, such as a jar entry, naming it in error
+     * messages. The default implementation ignores the name.
+     *
+     * @param buffer Class file bytes.
+     * @param name Name of the class file, such as
+     *        <code>lib/a.jar!/a/A.class</code>.
+     */
+    public JavaClass parse(ByteBuffer buffer, String name) throws IOException {
+        return parse(buffer);
+    }
+
+    /**
+     * Returns a parser which may be used on another thread concurrently
+     * with this one and which shares this parser's filter and listeners.
+     * <p>
+     * The default implementation returns <code>null</code>, indicating that
+     * the parser does not support concurrent use; callers must then
+     * serialize their calls to <code>parse</code>.
+     * </p>
+     *
+     * @return Parser for a worker thread, or <code>null</code>.
+     */
+    protected AbstractParser newWorkerParser() {
+        return null;
+    }
+
     /**
      * Informs registered parser listeners that the specified
-     * <code>JavaClass</code> was parsed.
+     * <code>JavaClass</code> was parsed. The listeners are shared by
+     * the worker parsers and informed of one class at a time.
      *
      * @param jClass Parsed Java class.
      */
     protected void onParsedJavaClass(JavaClass jClass) {
-        for (ParserListener parseListener : parseListeners) {
-            parseListener.onParsedJavaClass(jClass);
+        synchronized (parseListeners) {
+            for (ParserListener parseListener : parseListeners) {
+                parseListener.onParsedJavaClass(jClass);
+            }
         }
     }
 
@@ -63,6 +126,50 @@ public abstract class AbstractParser {
         this.filter = filter;
     }
 
+    /**
+     * Returns the table of canonical packages which parsed classes
+     * refer to.
+     */
+    public PackageTable getPackageTable() {
+        return packageTable;
+    }
+
+    /**
+     * Sets the table of canonical packages which parsed classes
+     * refer to, so that they share their packages with the other
+     * users of the table.
+     *
+     * @param packageTable Package table.
+     */
+    public void setPackageTable(PackageTable packageTable) {
+        this.packageTable = packageTable;
+    }
+
+    /**
+     * Reads the remaining bytes of the specified stream into a heap buffer.
+     *
+     * @param is Input stream.
+     * @param sizeHint Expected number of bytes, or 0 if unknown.
+     * @return Buffer holding the bytes read.
+     */
+    static ByteBuffer toBuffer(InputStream is, long sizeHint) throws IOException {
+        byte[] bytes = new byte[sizeHint > 0 && sizeHint <= Integer.MAX_VALUE ? (int) sizeHint : 8192];
+        int count = 0;
+        int n;
+        while ((n = is.read(bytes, count, bytes.length - count)) >= 0) {
+            count += n;
+            if (count == bytes.length) {
+                int next = is.read();
+                if (next < 0) {
+                    break;
+                }
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                bytes[count++] = (byte) next;
+            }
+        }
+        return ByteBuffer.wrap(bytes, 0, count);
+    }
+
     protected void debug(String message) {
         if (DEBUG) {
             System.err.println(message);
@@ -0,0 +1,25 @@
+package jdepend.framework;
+
+import java.io.File;
+
+/**
+ * The <code>BuildListener</code> interface defines a listener
+ * notified of the <code>JavaClass</code> instances built by a
+ * pipelined <code>JavaClassBuilder</code>.
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public interface BuildListener {
+
+    /**
+     * Called for every class built, on the thread which started the
+     * build.
+     *
+     * @param source Class or jar file containing the class.
+     * @param jClass Built class.
+     */
+    void onBuiltClass(File source, JavaClass jClass);
+
+}
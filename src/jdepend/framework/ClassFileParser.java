@@ -1,11 +1,19 @@
 package jdepend.framework;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * The <code>ClassFileParser</code> class is responsible for
  * parsing a Java class file to create a <code>JavaClass</code>
  * instance.
+ * <p>
+ * The parser itself only holds its filter and listeners; the state of
+ * each parse lives in a short-lived <code>ParseContext</code>. A single
+ * parser may therefore be used by several threads at the same time.
+ * </p>
  *
  * @author <b>Mike Clark</b>
  * @author Clarkware Consulting, Inc.
@@ -29,23 +37,21 @@ public class ClassFileParser extends AbstractParser {
 
     private static final int CONSTANT_METHOD_HANDLE = 15;
     private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
     private static final int CONSTANT_INVOKEDYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
 
     private static final char CLASS_DESCRIPTOR = 'L';
     private static final int ACC_INTERFACE = 0x200;
     private static final int ACC_ABSTRACT = 0x400;
+    private static final int ACC_MODULE = 0x8000;
 
-    private String fileName;
-    private String className;
-    private String superClassName;
-    private String interfaceNames[];
-    private boolean isAbstract;
-    private JavaClass jClass;
-    private Constant[] constantPool;
-    private FieldOrMethodInfo[] fields;
-    private FieldOrMethodInfo[] methods;
-    private AttributeInfo[] attributes;
-    private DataInputStream in;
+    private static final String SOURCE_FILE = "SourceFile";
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String MODULE = "Module";
+
+    private static final int MAPPING_THRESHOLD = 16 * 1024;
 
 
     public ClassFileParser() {
@@ -54,39 +60,80 @@ public class ClassFileParser extends AbstractParser {
 
     public ClassFileParser(PackageFilter filter) {
         super(filter);
-        reset();
     }
 
-    private void reset() {
-        className = null;
-        superClassName = null;
-        interfaceNames = new String[0];
-        isAbstract = false;
-
-        jClass = null;
-        constantPool = new Constant[1];
-        fields = new FieldOrMethodInfo[0];
-        methods = new FieldOrMethodInfo[0];
-        attributes = new AttributeInfo[0];
+    /**
+     * Returns this parser, as parsing keeps no state in the parser itself.
+     */
+    @Override
+    protected AbstractParser newWorkerParser() {
+        return this;
     }
 
     /**
      * Registered parser listeners are informed that the resulting
      * <code>JavaClass</code> was parsed.
+     * <p>
+     * Large class files are memory-mapped, smaller ones are read into
+     * a heap buffer with a single read.
+     * </p>
      */
+    @Override
     public JavaClass parse(File classFile) throws IOException {
+        return parseContext(classFile).jClass;
+    }
+
+    @Override
+    public JavaClass parse(InputStream is) throws IOException {
+        return parseContext(toBuffer(is, 0), null).jClass;
+    }
+
+    /**
+     * Parses the class file contained in the remaining bytes of the
+     * specified buffer. The position of the buffer is not changed.
+     */
+    @Override
+    public JavaClass parse(ByteBuffer buffer) throws IOException {
+        return parseContext(buffer, null).jClass;
+    }
+
+    /**
+     * Parses the class file contained in the remaining bytes of the
+     * specified buffer, naming it in error messages. The position of
+     * the buffer is not changed.
+     */
+    @Override
+    public JavaClass parse(ByteBuffer buffer, String name) throws IOException {
+        return parseContext(buffer, name).jClass;
+    }
 
-        this.fileName = classFile.getCanonicalPath();
+    private ParseContext parseContext(File classFile) throws IOException {
+
+        String fileName = classFile.getCanonicalPath();
 
         debug("\nParsing " + fileName + "...");
 
-        InputStream in = null;
+        FileInputStream in = null;
 
         try {
 
-            in = new BufferedInputStream(new FileInputStream(classFile));
+            in = new FileInputStream(classFile);
+
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+
+            ByteBuffer buffer;
+            if (size >= MAPPING_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading
+                }
+                buffer.flip();
+            }
 
-            return parse(in);
+            return parseContext(buffer, fileName);
 
         } finally {
             if (in != null) {
@@ -99,403 +146,620 @@ public class ClassFileParser extends AbstractParser {
         }
     }
 
-    @Override
-    public JavaClass parse(InputStream is) throws IOException {
+    private ParseContext parseContext(ByteBuffer buffer, String fileName) throws IOException {
 
-        reset();
+        ParseContext context = new ParseContext(fileName, buffer);
 
-        jClass = new JavaClass("Unknown");
+        try {
+            context.parse();
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Truncated class file" + where(fileName));
+        }
 
-        in = new DataInputStream(is);
+        onParsedJavaClass(context.jClass);
 
-        parseMagic();
+        return context;
+    }
 
-        parseMinorVersion();
-        parseMajorVersion();
+    /**
+     * Ends an error message with the name of the class file, if known.
+     */
+    private static String where(String fileName) {
+        return (fileName != null) ? ": " + fileName : "";
+    }
 
-        constantPool = parseConstantPool();
+    /**
+     * The state of a single class file parse.
+     */
+    private class ParseContext {
+
+        private final String fileName;
+        private final ByteBuffer bytes;
+        private int position;
+        private String className;
+        private String superClassName;
+        private String interfaceNames[];
+        private boolean isAbstract;
+        private boolean isModule;
+        private JavaClass jClass;
+        private ConstantPool constantPool;
+        private FieldOrMethodInfo[] fields;
+        private FieldOrMethodInfo[] methods;
+        private AttributeInfo[] attributes;
+
+        ParseContext(String fileName, ByteBuffer buffer) {
+            this.fileName = fileName;
+            this.bytes = buffer.slice();
+            this.position = 0;
+
+            interfaceNames = new String[0];
+            constantPool = new ConstantPool(bytes, new byte[1], new int[1], fileName);
+            fields = new FieldOrMethodInfo[0];
+            methods = new FieldOrMethodInfo[0];
+            attributes = new AttributeInfo[0];
+        }
 
-        parseAccessFlags();
+        void parse() throws IOException {
 
-        className = parseClassName();
+            jClass = new JavaClass("Unknown");
 
-        superClassName = parseSuperClassName();
+            parseMagic();
 
-        interfaceNames = parseInterfaces();
+            parseMinorVersion();
+            parseMajorVersion();
 
-        fields = parseFields();
+            constantPool = parseConstantPool();
 
-        methods = parseMethods();
+            parseAccessFlags();
 
-        parseAttributes();
+            className = parseClassName();
 
-        addClassConstantReferences();
+            superClassName = parseSuperClassName();
 
-        addAnnotationsReferences();
+            interfaceNames = parseInterfaces();
 
-        onParsedJavaClass(jClass);
+            fields = parseFields();
 
-        return jClass;
-    }
+            methods = parseMethods();
 
-    private int parseMagic() throws IOException {
-        int magic = in.readInt();
-        if (magic != JAVA_MAGIC) {
-            throw new IOException("Invalid class file: " + fileName);
-        }
+            parseAttributes();
 
-        return magic;
-    }
+            addClassConstantReferences();
 
-    private int parseMinorVersion() throws IOException {
-        return in.readUnsignedShort();
-    }
+            addAnnotationsReferences();
 
-    private int parseMajorVersion() throws IOException {
-        return in.readUnsignedShort();
-    }
+            addModuleReferences();
+        }
 
-    private Constant[] parseConstantPool() throws IOException {
-        int constantPoolSize = in.readUnsignedShort();
+        private byte readByte() {
+            return bytes.get(position++);
+        }
 
-        Constant[] pool = new Constant[constantPoolSize];
+        private int readUnsignedShort() {
+            int value = bytes.getShort(position) & 0xFFFF;
+            position += 2;
+            return value;
+        }
 
-        for (int i = 1; i < constantPoolSize; i++) {
+        private int readInt() {
+            int value = bytes.getInt(position);
+            position += 4;
+            return value;
+        }
 
-            Constant constant = parseNextConstant();
+        private int parseMagic() throws IOException {
+            int magic = readInt();
+            if (magic != JAVA_MAGIC) {
+                throw new IOException("Invalid class file" + where(fileName));
+            }
 
-            pool[i] = constant;
+            return magic;
+        }
 
-            //
-            // 8-byte constants use two constant pool entries
-            //
-            if (constant.getTag() == CONSTANT_DOUBLE || constant.getTag() == CONSTANT_LONG) {
-                i++;
-            }
+        private int parseMinorVersion() throws IOException {
+            return readUnsignedShort();
         }
 
-        return pool;
-    }
+        private int parseMajorVersion() throws IOException {
+            return readUnsignedShort();
+        }
 
-    private void parseAccessFlags() throws IOException {
-        int accessFlags = in.readUnsignedShort();
+        /**
+         * Records the tag and offset of every constant pool entry without
+         * decoding it. Entries are decoded on first access.
+         */
+        private ConstantPool parseConstantPool() throws IOException {
+            int constantPoolSize = readUnsignedShort();
 
-        boolean isAbstract = ((accessFlags & ACC_ABSTRACT) != 0);
-        boolean isInterface = ((accessFlags & ACC_INTERFACE) != 0);
+            byte[] tags = new byte[constantPoolSize];
+            int[] offsets = new int[constantPoolSize];
 
-        this.isAbstract = isAbstract || isInterface;
-        jClass.isAbstract(this.isAbstract);
+            for (int i = 1; i < constantPoolSize; i++) {
 
-        debug("Parser: abstract = " + this.isAbstract);
-    }
+                byte tag = readByte();
 
-    private String parseClassName() throws IOException {
-        int entryIndex = in.readUnsignedShort();
-        String className = getClassConstantName(entryIndex);
-        jClass.setName(className);
-        jClass.setPackageName(getPackageName(className));
+                tags[i] = tag;
+                offsets[i] = position;
 
-        debug("Parser: class name = " + className);
-        debug("Parser: package name = " + getPackageName(className));
+                position += constantSize(tag);
 
-        return className;
-    }
+                //
+                // 8-byte constants use two constant pool entries
+                //
+                if (tag == CONSTANT_DOUBLE || tag == CONSTANT_LONG) {
+                    i++;
+                }
+            }
 
-    private String parseSuperClassName() throws IOException {
-        int entryIndex = in.readUnsignedShort();
-        String superClassName = getClassConstantName(entryIndex);
-        addImport(getPackageName(superClassName));
+            return new ConstantPool(bytes, tags, offsets, fileName);
+        }
 
-        debug("Parser: super class name = " + superClassName);
+        private int constantSize(byte tag) throws IOException {
+
+            switch (tag) {
+
+                case (ClassFileParser.CONSTANT_CLASS):
+                case (ClassFileParser.CONSTANT_STRING):
+                case (ClassFileParser.CONSTANT_METHOD_TYPE):
+                case (ClassFileParser.CONSTANT_MODULE):
+                case (ClassFileParser.CONSTANT_PACKAGE):
+                    return 2;
+                case (ClassFileParser.CONSTANT_METHOD_HANDLE):
+                    return 3;
+                case (ClassFileParser.CONSTANT_FIELD):
+                case (ClassFileParser.CONSTANT_METHOD):
+                case (ClassFileParser.CONSTANT_INTERFACEMETHOD):
+                case (ClassFileParser.CONSTANT_NAMEANDTYPE):
+                case (ClassFileParser.CONSTANT_DYNAMIC):
+                case (ClassFileParser.CONSTANT_INVOKEDYNAMIC):
+                case (ClassFileParser.CONSTANT_INTEGER):
+                case (ClassFileParser.CONSTANT_FLOAT):
+                    return 4;
+                case (ClassFileParser.CONSTANT_LONG):
+                case (ClassFileParser.CONSTANT_DOUBLE):
+                    return 8;
+                case (ClassFileParser.CONSTANT_UTF8):
+                    return 2 + u2(position);
+                default:
+                    throw new IOException("Unknown constant: " + tag);
+            }
+        }
 
-        return superClassName;
-    }
+        private void parseAccessFlags() throws IOException {
+            int accessFlags = readUnsignedShort();
+
+            boolean isAbstract = ((accessFlags & ACC_ABSTRACT) != 0);
+            boolean isInterface = ((accessFlags & ACC_INTERFACE) != 0);
+            this.isModule = ((accessFlags & ACC_MODULE) != 0);
 
-    private String[] parseInterfaces() throws IOException {
-        int interfacesCount = in.readUnsignedShort();
-        String[] interfaceNames = new String[interfacesCount];
-        for (int i = 0; i < interfacesCount; i++) {
-            int entryIndex = in.readUnsignedShort();
-            interfaceNames[i] = getClassConstantName(entryIndex);
-            addImport(getPackageName(interfaceNames[i]));
+            this.isAbstract = isAbstract || isInterface;
+            jClass.isAbstract(this.isAbstract);
 
-            debug("Parser: interface = " + interfaceNames[i]);
+            debug("Parser: abstract = " + this.isAbstract);
         }
 
-        return interfaceNames;
-    }
+        private String parseClassName() throws IOException {
+            int entryIndex = readUnsignedShort();
+            String className = getClassConstantName(entryIndex);
+            jClass.setName(className);
+            jClass.setPackageName(getPackageTable().intern(getPackageName(className)).getName());
+
+            debug("Parser: class name = " + className);
+            debug("Parser: package name = " + getPackageName(className));
+
+            return className;
+        }
+
+        private String parseSuperClassName() throws IOException {
+            int entryIndex = readUnsignedShort();
+            String superClassName = getClassConstantName(entryIndex);
+            addImport(getPackageName(superClassName));
+
+            debug("Parser: super class name = " + superClassName);
+
+            return superClassName;
+        }
+
+        private String[] parseInterfaces() throws IOException {
+            int interfacesCount = readUnsignedShort();
+            String[] interfaceNames = new String[interfacesCount];
+            for (int i = 0; i < interfacesCount; i++) {
+                int entryIndex = readUnsignedShort();
+                interfaceNames[i] = getClassConstantName(entryIndex);
+                addImport(getPackageName(interfaceNames[i]));
 
-    private FieldOrMethodInfo[] parseFields() throws IOException {
-        int fieldsCount = in.readUnsignedShort();
-        FieldOrMethodInfo[] fields = new FieldOrMethodInfo[fieldsCount];
-        for (int i = 0; i < fieldsCount; i++) {
-            fields[i] = parseFieldOrMethodInfo();
-            String descriptor = toUTF8(fields[i].getDescriptorIndex());
-            debug("Parser: field descriptor = " + descriptor);
-            String[] types = descriptorToTypes(descriptor);
-            for (String type : types) {
-                addImport(getPackageName(type));
-                debug("Parser: field type = " + type);
+                debug("Parser: interface = " + interfaceNames[i]);
             }
+
+            return interfaceNames;
         }
 
-        return fields;
-    }
+        private FieldOrMethodInfo[] parseFields() throws IOException {
+            int fieldsCount = readUnsignedShort();
+            FieldOrMethodInfo[] fields = new FieldOrMethodInfo[fieldsCount];
+            for (int i = 0; i < fieldsCount; i++) {
+                fields[i] = parseFieldOrMethodInfo();
+                if (DEBUG) {
+                    debug("Parser: field descriptor = " + toUTF8(fields[i].getDescriptorIndex()));
+                }
+                addDescriptorImports(fields[i].getDescriptorIndex());
+            }
+
+            return fields;
+        }
 
-    private FieldOrMethodInfo[] parseMethods() throws IOException {
-        int methodsCount = in.readUnsignedShort();
-        FieldOrMethodInfo[] methods = new FieldOrMethodInfo[methodsCount];
-        for (int i = 0; i < methodsCount; i++) {
-            methods[i] = parseFieldOrMethodInfo();
-            String descriptor = toUTF8(methods[i].getDescriptorIndex());
-            debug("Parser: method descriptor = " + descriptor);
-            String[] types = descriptorToTypes(descriptor);
-            for (String type : types) {
-                if (type.length() > 0) {
-                    addImport(getPackageName(type));
-                    debug("Parser: method type = " + type);
+        private FieldOrMethodInfo[] parseMethods() throws IOException {
+            int methodsCount = readUnsignedShort();
+            FieldOrMethodInfo[] methods = new FieldOrMethodInfo[methodsCount];
+            for (int i = 0; i < methodsCount; i++) {
+                methods[i] = parseFieldOrMethodInfo();
+                if (DEBUG) {
+                    debug("Parser: method descriptor = " + toUTF8(methods[i].getDescriptorIndex()));
                 }
+                addDescriptorImports(methods[i].getDescriptorIndex());
             }
+
+            return methods;
         }
 
-        return methods;
-    }
+        private FieldOrMethodInfo parseFieldOrMethodInfo() throws IOException {
 
-    private Constant parseNextConstant() throws IOException {
+            FieldOrMethodInfo result = new FieldOrMethodInfo(
+                    readUnsignedShort(), readUnsignedShort(), readUnsignedShort());
+
+            int attributesCount = readUnsignedShort();
+            for (int a = 0; a < attributesCount; a++) {
+                AttributeInfo attribute = parseAttribute();
+                if (attribute != null && RUNTIME_VISIBLE_ANNOTATIONS.equals(attribute.getName())) {
+                    result._runtimeVisibleAnnotations = attribute;
+                }
+            }
 
-        Constant result;
+            return result;
+        }
 
-        byte tag = in.readByte();
+        private void parseAttributes() throws IOException {
+            int attributesCount = readUnsignedShort();
+            attributes = new AttributeInfo[attributesCount];
 
-        switch (tag) {
+            for (int i = 0; i < attributesCount; i++) {
+                attributes[i] = parseAttribute();
 
-            case (ClassFileParser.CONSTANT_CLASS):
-            case (ClassFileParser.CONSTANT_STRING):
-            case (ClassFileParser.CONSTANT_METHOD_TYPE):
-                result = new Constant(tag, in.readUnsignedShort());
-                break;
-            case (ClassFileParser.CONSTANT_FIELD):
-            case (ClassFileParser.CONSTANT_METHOD):
-            case (ClassFileParser.CONSTANT_INTERFACEMETHOD):
-            case (ClassFileParser.CONSTANT_NAMEANDTYPE):
-            case (ClassFileParser.CONSTANT_INVOKEDYNAMIC):
-                result = new Constant(tag, in.readUnsignedShort(), in.readUnsignedShort());
-                break;
-            case (ClassFileParser.CONSTANT_INTEGER):
-                result = new Constant(tag, new Integer(in.readInt()));
-                break;
-            case (ClassFileParser.CONSTANT_FLOAT):
-                result = new Constant(tag, in.readFloat());
-                break;
-            case (ClassFileParser.CONSTANT_LONG):
-                result = new Constant(tag, in.readLong());
-                break;
-            case (ClassFileParser.CONSTANT_DOUBLE):
-                result = new Constant(tag, in.readDouble());
-                break;
-            case (ClassFileParser.CONSTANT_UTF8):
-                result = new Constant(tag, in.readUTF());
-                break;
-            case (ClassFileParser.CONSTANT_METHOD_HANDLE):
-                result = new Constant(tag, in.readByte(), in.readUnsignedShort());
-                break;
-            default:
-                throw new IOException("Unknown constant: " + tag);
+                // Section 4.7.7 of VM Spec - Class File Format
+                if (attributes[i] != null && SOURCE_FILE.equals(attributes[i].getName())) {
+                    String descriptor = toUTF8(u2(attributes[i].getOffset()));
+                    jClass.setSourceFile(descriptor);
+                }
+            }
         }
 
-        return result;
-    }
+        /**
+         * Parses the attribute at the current position. Only attributes
+         * a dependency is extracted from are returned; the bodies of all
+         * other attributes (Code, LineNumberTable, StackMapTable, ...)
+         * are skipped without being read.
+         *
+         * @return Attribute, or <code>null</code> if it was skipped.
+         */
+        private AttributeInfo parseAttribute() throws IOException {
+            int nameIndex = readUnsignedShort();
+
+            int attributeLength = readInt();
+            if (attributeLength < 0 || attributeLength > bytes.limit() - position) {
+                throw new IOException("Invalid attribute length in class file" + where(fileName));
+            }
 
-    private FieldOrMethodInfo parseFieldOrMethodInfo() throws IOException {
+            AttributeInfo result = null;
+            if (constantPool.utf8Equals(nameIndex, SOURCE_FILE)) {
+                result = new AttributeInfo(SOURCE_FILE, position, attributeLength);
+            } else if (constantPool.utf8Equals(nameIndex, RUNTIME_VISIBLE_ANNOTATIONS)) {
+                result = new AttributeInfo(RUNTIME_VISIBLE_ANNOTATIONS, position, attributeLength);
+            } else if (isModule && constantPool.utf8Equals(nameIndex, MODULE)) {
+                result = new AttributeInfo(MODULE, position, attributeLength);
+            }
 
-        FieldOrMethodInfo result = new FieldOrMethodInfo(
-                in.readUnsignedShort(), in.readUnsignedShort(), in.readUnsignedShort());
+            position += attributeLength;
+            return result;
+        }
 
-        int attributesCount = in.readUnsignedShort();
-        for (int a = 0; a < attributesCount; a++) {
-            AttributeInfo attribute = parseAttribute();
-            if ("RuntimeVisibleAnnotations".equals(attribute.name)) {
-                result._runtimeVisibleAnnotations = attribute;
+        private void addClassConstantReferences() throws IOException {
+            for (int j = 1; j < constantPool.size(); j++) {
+                if (constantPool.getTag(j) == CONSTANT_CLASS) {
+                    int nameIndex = constantPool.getNameIndex(j);
+                    int start = constantPool.getUTF8Offset(nameIndex);
+                    int end = start + constantPool.getUTF8Length(nameIndex);
+                    if (start < end && bytes.get(start) == '[') {
+                        addTypeImport(start, end);
+                    } else {
+                        addClassNameImport(start, end);
+                    }
+
+                    if (DEBUG) {
+                        debug("Parser: class type = " + slashesToDots(toUTF8(nameIndex)));
+                    }
+                }
             }
         }
 
-        return result;
-    }
+        /**
+         * Records the module declared by a module descriptor and the
+         * modules it requires (JVM Spec 4.7.25). The services it uses
+         * or provides are class constants, already imported.
+         */
+        private void addModuleReferences() throws IOException {
+            for (AttributeInfo attribute : attributes) {
+                if (attribute != null && MODULE.equals(attribute.getName())) {
+                    int index = attribute.getOffset();
+                    jClass.setModuleName(getModuleName(u2(index)));
+
+                    int requiresCount = u2(index + 6);
+                    index += 8;
+                    for (int i = 0; i < requiresCount; i++) {
+                        String required = getModuleName(u2(index));
+                        jClass.addRequiredModule(required);
+                        index += 6;
+
+                        debug("Parser: requires = " + required);
+                    }
+                }
+            }
+        }
 
-    private void parseAttributes() throws IOException {
-        int attributesCount = in.readUnsignedShort();
-        attributes = new AttributeInfo[attributesCount];
+        private String getModuleName(int entryIndex) throws IOException {
+            if (constantPool.getTag(entryIndex) != CONSTANT_MODULE) {
+                throw new IOException("Constant pool entry is not a module: " + entryIndex);
+            }
+            return toUTF8(constantPool.getNameIndex(entryIndex));
+        }
 
-        for (int i = 0; i < attributesCount; i++) {
-            attributes[i] = parseAttribute();
+        private void addAnnotationsReferences() throws IOException {
+            for (int j = 1; j < attributes.length; j++) {
+                if (attributes[j] != null && RUNTIME_VISIBLE_ANNOTATIONS.equals(attributes[j].getName())) {
+                    addAnnotationReferences(attributes[j]);
+                }
+            }
+            for (int j = 1; j < fields.length; j++) {
+                if (fields[j]._runtimeVisibleAnnotations != null) {
+                    addAnnotationReferences(fields[j]._runtimeVisibleAnnotations);
+                }
+            }
+            for (int j = 1; j < methods.length; j++) {
+                if (methods[j]._runtimeVisibleAnnotations != null) {
+                    addAnnotationReferences(methods[j]._runtimeVisibleAnnotations);
+                }
+            }
+        }
 
-            // Section 4.7.7 of VM Spec - Class File Format
-            if (attributes[i].getName() != null) {
-                if (attributes[i].getName().equals("SourceFile")) {
-                    byte[] b = attributes[i].getValue();
-                    int b0 = b[0] < 0 ? b[0] + 256 : b[0];
-                    int b1 = b[1] < 0 ? b[1] + 256 : b[1];
-                    int pe = b0 * 256 + b1;
+        private void addAnnotationReferences(AttributeInfo annotation) throws IOException {
+            // JVM Spec 4.8.15
+            int numAnnotations = u2(annotation.getOffset());
+            int annotationIndex = annotation.getOffset() + 2;
+            addAnnotationReferences(annotationIndex, numAnnotations);
+        }
 
-                    String descriptor = toUTF8(pe);
-                    jClass.setSourceFile(descriptor);
+        private int addAnnotationReferences(int index, int numAnnotations) throws IOException {
+            int visitedAnnotations = 0;
+            while (visitedAnnotations < numAnnotations) {
+                int typeIndex = u2(index);
+                int numElementValuePairs = u2(index = index + 2);
+                addDescriptorImport(typeIndex);
+                int visitedElementValuePairs = 0;
+                index += 2;
+                while (visitedElementValuePairs < numElementValuePairs) {
+                    index = addAnnotationElementValueReferences(index + 2);
+                    visitedElementValuePairs++;
                 }
+                visitedAnnotations++;
             }
+            return index;
         }
-    }
 
-    private AttributeInfo parseAttribute() throws IOException {
-        AttributeInfo result = new AttributeInfo();
+        private int addAnnotationElementValueReferences(int index) throws IOException {
+            byte tag = bytes.get(index);
+            index += 1;
+            switch (tag) {
+                case 'B':
+                case 'C':
+                case 'D':
+                case 'F':
+                case 'I':
+                case 'J':
+                case 'S':
+                case 'Z':
+                case 's':
+                    index += 2;
+                    break;
+
+                case 'e':
+                    int enumTypeIndex = u2(index);
+                    addDescriptorImport(enumTypeIndex);
+                    index += 4;
+                    break;
+
+                case 'c':
+                    int classInfoIndex = u2(index);
+                    addDescriptorImport(classInfoIndex);
+                    index += 2;
+                    break;
+
+                case '@':
+                    index = addAnnotationReferences(index, 1);
+                    break;
+
+                case '[':
+                    int numValues = u2(index);
+                    index = index + 2;
+                    for (int i = 0; i < numValues; i++) {
+                        index = addAnnotationElementValueReferences(index);
+                    }
+                    break;
+            }
+            return index;
+        }
 
-        int nameIndex = in.readUnsignedShort();
-        if (nameIndex != -1) {
-            result.setName(toUTF8(nameIndex));
+        private int u2(int index) {
+            return bytes.getShort(index) & 0xFFFF;
         }
 
-        int attributeLength = in.readInt();
-        byte[] value = new byte[attributeLength];
-        for (int b = 0; b < attributeLength; b++) {
-            value[b] = in.readByte();
+        private String getClassConstantName(int entryIndex) throws IOException {
+
+            if (constantPool.getTag(entryIndex) == 0) {
+                return "";
+            }
+            return slashesToDots(toUTF8(constantPool.getNameIndex(entryIndex)));
         }
 
-        result.setValue(value);
-        return result;
-    }
+        private String toUTF8(int entryIndex) throws IOException {
+            return constantPool.getUTF8(entryIndex);
+        }
 
-    private Constant getConstantPoolEntry(int entryIndex) throws IOException {
-        if (entryIndex < 0 || entryIndex >= constantPool.length) {
-            throw new IOException("Illegal constant pool index : " + entryIndex);
+        /**
+         * Adds the packages of all class types referenced by the field or
+         * method descriptor held in the specified UTF8 entry. The encoded
+         * descriptor is scanned in place; the only object created per
+         * type is its package name.
+         */
+        private void addDescriptorImports(int descriptorIndex) throws IOException {
+            int start = constantPool.getUTF8Offset(descriptorIndex);
+            int end = start + constantPool.getUTF8Length(descriptorIndex);
+
+            for (int index = start; index < end; index++) {
+                if (bytes.get(index) == CLASS_DESCRIPTOR) {
+                    int typeEnd = indexOf(';', index + 1, end);
+                    if (typeEnd < 0) {
+                        break;
+                    }
+                    addClassNameImport(index + 1, typeEnd);
+                    index = typeEnd;
+                }
+            }
         }
 
-        return constantPool[entryIndex];
-    }
+        /**
+         * Adds the package of the single type described by the field
+         * descriptor held in the specified UTF8 entry.
+         */
+        private void addDescriptorImport(int descriptorIndex) throws IOException {
+            int start = constantPool.getUTF8Offset(descriptorIndex);
+            addTypeImport(start, start + constantPool.getUTF8Length(descriptorIndex));
+        }
 
-    private void addClassConstantReferences() throws IOException {
-        for (int j = 1; j < constantPool.length; j++) {
-            if (constantPool[j].getTag() == CONSTANT_CLASS) {
-                String name = toUTF8(constantPool[j].getNameIndex());
-                addImport(getPackageName(name));
+        /**
+         * Adds the package of the first class type found in the field
+         * descriptor between the specified offsets. Descriptors of
+         * primitive types and primitive arrays add nothing.
+         */
+        private void addTypeImport(int start, int end) throws IOException {
+            int typeStart = indexOf(CLASS_DESCRIPTOR, start, end);
+            if (typeStart >= 0) {
+                int typeEnd = indexOf(';', typeStart + 1, end);
+                addClassNameImport(typeStart + 1, typeEnd < 0 ? end : typeEnd);
+            }
+        }
 
-                debug("Parser: class type = " + slashesToDots(name));
+        /**
+         * Adds the package of the internal class name (such as
+         * <code>java/lang/String</code>) between the specified offsets.
+         */
+        private void addClassNameImport(int start, int end) throws IOException {
+            int lastSlash = -1;
+            for (int index = start; index < end; index++) {
+                if (bytes.get(index) == '/') {
+                    lastSlash = index;
+                }
             }
 
-            if (constantPool[j].getTag() == CONSTANT_DOUBLE || constantPool[j].getTag() == CONSTANT_LONG) {
-                j++;
+            if (lastSlash > start) {
+                addImport(constantPool.decodeUTF8(start, lastSlash, true));
+            } else {
+                addImport("Default");
             }
         }
-    }
 
-    private void addAnnotationsReferences() throws IOException {
-        for (int j = 1; j < attributes.length; j++) {
-            if ("RuntimeVisibleAnnotations".equals(attributes[j].name)) {
-                addAnnotationReferences(attributes[j]);
+        private int indexOf(char c, int start, int end) {
+            for (int index = start; index < end; index++) {
+                if (bytes.get(index) == c) {
+                    return index;
+                }
             }
+            return -1;
         }
-        for (int j = 1; j < fields.length; j++) {
-            if (fields[j]._runtimeVisibleAnnotations != null) {
-                addAnnotationReferences(fields[j]._runtimeVisibleAnnotations);
+
+        private void addImport(String importPackage) {
+            if ((importPackage != null) && (getFilter().accept(importPackage))) {
+                jClass.addImportedPackage(getPackageTable().intern(importPackage));
             }
         }
-        for (int j = 1; j < methods.length; j++) {
-            if (methods[j]._runtimeVisibleAnnotations != null) {
-                addAnnotationReferences(methods[j]._runtimeVisibleAnnotations);
+
+        private String toString(FieldOrMethodInfo info) {
+            StringBuilder s = new StringBuilder("");
+
+            try {
+                s.append("\n    name (#" + info.getNameIndex() + ") = " + toUTF8(info.getNameIndex()));
+
+                s.append("\n    signature (#" + info.getDescriptorIndex() + ") = " + toUTF8(info.getDescriptorIndex()));
+
+                String[] types = descriptorToTypes(toUTF8(info.getDescriptorIndex()));
+                for (String type : types) {
+                    s.append("\n        type = " + type);
+                }
+
+            } catch (Exception e) {
+                e.printStackTrace();
             }
+
+            return s.toString();
         }
-    }
 
-    private void addAnnotationReferences(AttributeInfo annotation) throws IOException {
-        // JVM Spec 4.8.15
-        byte[] data = annotation.value;
-        int numAnnotations = u2(data, 0);
-        int annotationIndex = 2;
-        addAnnotationReferences(data, annotationIndex, numAnnotations);
-    }
+        /**
+         * Returns a string representation of the parsed class file.
+         *
+         * @return String representation.
+         */
+        @Override
+        public String toString() {
 
-    private int addAnnotationReferences(byte[] data, int index, int numAnnotations) throws IOException {
-        int visitedAnnotations = 0;
-        while (visitedAnnotations < numAnnotations) {
-            int typeIndex = u2(data, index);
-            int numElementValuePairs = u2(data, index = index + 2);
-            addImport(getPackageName(toUTF8(typeIndex).substring(1)));
-            int visitedElementValuePairs = 0;
-            index += 2;
-            while (visitedElementValuePairs < numElementValuePairs) {
-                index = addAnnotationElementValueReferences(data, index + 2);
-                visitedElementValuePairs++;
-            }
-            visitedAnnotations++;
-        }
-        return index;
-    }
+            StringBuilder s = new StringBuilder();
 
-    private int addAnnotationElementValueReferences(byte[] data, int index) throws IOException {
-        byte tag = data[index];
-        index += 1;
-        switch (tag) {
-            case 'B':
-            case 'C':
-            case 'D':
-            case 'F':
-            case 'I':
-            case 'J':
-            case 'S':
-            case 'Z':
-            case 's':
-                index += 2;
-                break;
+            try {
 
-            case 'e':
-                int enumTypeIndex = u2(data, index);
-                addImport(getPackageName(toUTF8(enumTypeIndex).substring(1)));
-                index += 4;
-                break;
+                s.append("\n" + className + ":\n");
 
-            case 'c':
-                int classInfoIndex = u2(data, index);
-                addImport(getPackageName(toUTF8(classInfoIndex).substring(1)));
-                index += 2;
-                break;
+                s.append("\nConstants:\n");
+                for (int i = 1; i < constantPool.size(); i++) {
+                    if (constantPool.getTag(i) != 0) {
+                        s.append("    " + i + ". " + constantPool.toString(i) + "\n");
+                    }
+                }
 
-            case '@':
-                index = addAnnotationReferences(data, index, 1);
-                break;
+                s.append("\nClass Name: " + className + "\n");
+                s.append("Super Name: " + superClassName + "\n\n");
 
-            case '[':
-                int numValues = u2(data, index);
-                index = index + 2;
-                for (int i = 0; i < numValues; i++) {
-                    index = addAnnotationElementValueReferences(data, index);
+                s.append(interfaceNames.length + " interfaces\n");
+                for (String interfaceName : interfaceNames) {
+                    s.append("    " + interfaceName + "\n");
                 }
-                break;
-        }
-        return index;
-    }
-
-    private int u2(byte[] data, int index) {
-        return (data[index] << 8 & 0xFF00) | (data[index + 1] & 0xFF);
-    }
 
-    private String getClassConstantName(int entryIndex) throws IOException {
+                s.append("\n" + fields.length + " fields\n");
+                for (FieldOrMethodInfo field : fields) {
+                    s.append(toString(field) + "\n");
+                }
 
-        Constant entry = getConstantPoolEntry(entryIndex);
-        if (entry == null) {
-            return "";
-        }
-        return slashesToDots(toUTF8(entry.getNameIndex()));
-    }
+                s.append("\n" + methods.length + " methods\n");
+                for (FieldOrMethodInfo method : methods) {
+                    s.append(toString(method) + "\n");
+                }
 
-    private String toUTF8(int entryIndex) throws IOException {
-        Constant entry = getConstantPoolEntry(entryIndex);
-        if (entry.getTag() == CONSTANT_UTF8) {
-            return (String) entry.getValue();
-        }
+                s.append("\nDependencies:\n");
+                for (JavaPackage jPackage : jClass.getImportedPackages()) {
+                    s.append("    " + jPackage.getName() + "\n");
+                }
 
-        throw new IOException("Constant pool entry is not a UTF8 type: " + entryIndex);
-    }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
 
-    private void addImport(String importPackage) {
-        if ((importPackage != null) && (getFilter().accept(importPackage))) {
-            jClass.addImportedPackage(new JavaPackage(importPackage));
+            return s.toString();
         }
     }
 
@@ -548,72 +812,204 @@ public class ClassFileParser extends AbstractParser {
         return types;
     }
 
-    class Constant {
+    /**
+     * A constant pool which only records the tag and the offset of each
+     * entry. Entries are decoded on first access, so the many UTF8
+     * constants a dependency analysis never looks at (method names,
+     * string literals, ...) are never turned into strings.
+     */
+    static class ConstantPool {
 
-        private final byte _tag;
+        private final ByteBuffer bytes;
 
-        private final int _nameIndex;
+        private final byte[] tags;
 
-        private final int _typeIndex;
+        private final int[] offsets;
 
-        private Object _value;
+        private final String[] utf8;
 
-        Constant(byte tag, int nameIndex) {
-            this(tag, nameIndex, -1);
+        private final String fileName;
+
+        ConstantPool(ByteBuffer bytes, byte[] tags, int[] offsets, String fileName) {
+            this.bytes = bytes;
+            this.tags = tags;
+            this.offsets = offsets;
+            this.utf8 = new String[tags.length];
+            this.fileName = fileName;
         }
 
-        Constant(byte tag, Object value) {
-            this(tag, -1, -1);
-            _value = value;
+        int size() {
+            return tags.length;
         }
 
-        Constant(byte tag, int nameIndex, int typeIndex) {
-            _tag = tag;
-            _nameIndex = nameIndex;
-            _typeIndex = typeIndex;
-            _value = null;
+        /**
+         * Returns the tag of the specified entry, or 0 for index 0 and
+         * the unusable entries following 8-byte constants.
+         */
+        byte getTag(int entryIndex) throws IOException {
+            if (entryIndex < 0 || entryIndex >= tags.length) {
+                throw new IOException("Illegal constant pool index : " + entryIndex);
+            }
+
+            return tags[entryIndex];
         }
 
-        byte getTag() {
-            return _tag;
+        int getNameIndex(int entryIndex) throws IOException {
+            getTag(entryIndex);
+            return u2(offsets[entryIndex]);
         }
 
-        int getNameIndex() {
-            return _nameIndex;
+        String getUTF8(int entryIndex) throws IOException {
+            checkUTF8(entryIndex);
+
+            String value = utf8[entryIndex];
+            if (value == null) {
+                int offset = offsets[entryIndex];
+                value = decodeUTF8(offset + 2, offset + 2 + u2(offset), false);
+                utf8[entryIndex] = value;
+            }
+
+            return value;
         }
 
-        int getTypeIndex() {
-            return _typeIndex;
+        /**
+         * Returns the offset of the encoded bytes of the specified UTF8 entry.
+         */
+        int getUTF8Offset(int entryIndex) throws IOException {
+            checkUTF8(entryIndex);
+            return offsets[entryIndex] + 2;
         }
 
-        Object getValue() {
-            return _value;
+        /**
+         * Returns the number of encoded bytes of the specified UTF8 entry.
+         */
+        int getUTF8Length(int entryIndex) throws IOException {
+            checkUTF8(entryIndex);
+            return u2(offsets[entryIndex]);
         }
 
-        @Override
-        public String toString() {
+        /**
+         * Indicates whether the specified UTF8 entry equals the specified
+         * ASCII string, without decoding the entry.
+         */
+        boolean utf8Equals(int entryIndex, String ascii) throws IOException {
+            checkUTF8(entryIndex);
+
+            int offset = offsets[entryIndex];
+            int length = u2(offset);
+            if (length != ascii.length()) {
+                return false;
+            }
 
-            StringBuilder s = new StringBuilder("");
+            for (int i = 0; i < length; i++) {
+                if (bytes.get(offset + 2 + i) != ascii.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
 
-            s.append("tag: " + getTag());
+        private void checkUTF8(int entryIndex) throws IOException {
+            if (getTag(entryIndex) != CONSTANT_UTF8) {
+                throw new IOException("Constant pool entry is not a UTF8 type: " + entryIndex);
+            }
+        }
 
-            if (getNameIndex() > -1) {
-                s.append(" nameIndex: " + getNameIndex());
+        /**
+         * Decodes the bytes between the specified offsets, which are in
+         * the modified UTF-8 format used by class files (JVM Spec 4.4.7).
+         *
+         * @param slashesToDots <code>true</code> to turn the slashes of
+         *                      internal class names into dots.
+         */
+        String decodeUTF8(int start, int end, boolean slashesToDots) throws IOException {
+            int position = start;
+            char[] chars = new char[end - start];
+            int count = 0;
+
+            while (position < end) {
+                int c = bytes.get(position) & 0xFF;
+                if (c < 0x80) {
+                    position++;
+                } else if ((c & 0xE0) == 0xC0) {
+                    c = ((c & 0x1F) << 6) | (bytes.get(position + 1) & 0x3F);
+                    position += 2;
+                } else if ((c & 0xF0) == 0xE0) {
+                    c = ((c & 0x0F) << 12) | ((bytes.get(position + 1) & 0x3F) << 6) | (bytes.get(position + 2) & 0x3F);
+                    position += 3;
+                } else {
+                    throw new IOException("Malformed UTF8 constant in class file" + where(fileName));
+                }
+                if (slashesToDots && c == '/') {
+                    c = '.';
+                }
+                chars[count++] = (char) c;
             }
 
-            if (getTypeIndex() > -1) {
-                s.append(" typeIndex: " + getTypeIndex());
+            if (position != end) {
+                throw new IOException("Malformed UTF8 constant in class file" + where(fileName));
             }
 
-            if (getValue() != null) {
-                s.append(" value: " + getValue());
+            return new String(chars, 0, count);
+        }
+
+        private int u2(int index) {
+            return bytes.getShort(index) & 0xFFFF;
+        }
+
+        String toString(int entryIndex) throws IOException {
+
+            StringBuilder s = new StringBuilder("");
+
+            byte tag = getTag(entryIndex);
+            int offset = offsets[entryIndex];
+
+            s.append("tag: " + tag);
+
+            switch (tag) {
+                case (ClassFileParser.CONSTANT_CLASS):
+                case (ClassFileParser.CONSTANT_STRING):
+                case (ClassFileParser.CONSTANT_METHOD_TYPE):
+                case (ClassFileParser.CONSTANT_MODULE):
+                case (ClassFileParser.CONSTANT_PACKAGE):
+                    s.append(" nameIndex: " + u2(offset));
+                    break;
+                case (ClassFileParser.CONSTANT_FIELD):
+                case (ClassFileParser.CONSTANT_METHOD):
+                case (ClassFileParser.CONSTANT_INTERFACEMETHOD):
+                case (ClassFileParser.CONSTANT_NAMEANDTYPE):
+                    s.append(" nameIndex: " + u2(offset) + " typeIndex: " + u2(offset + 2));
+                    break;
+                case (ClassFileParser.CONSTANT_DYNAMIC):
+                case (ClassFileParser.CONSTANT_INVOKEDYNAMIC):
+                    s.append(" bootstrapIndex: " + u2(offset) + " nameAndTypeIndex: " + u2(offset + 2));
+                    break;
+                case (ClassFileParser.CONSTANT_METHOD_HANDLE):
+                    s.append(" nameIndex: " + bytes.get(offset) + " typeIndex: " + u2(offset + 1));
+                    break;
+                case (ClassFileParser.CONSTANT_INTEGER):
+                    s.append(" value: " + bytes.getInt(offset));
+                    break;
+                case (ClassFileParser.CONSTANT_FLOAT):
+                    s.append(" value: " + bytes.getFloat(offset));
+                    break;
+                case (ClassFileParser.CONSTANT_LONG):
+                    s.append(" value: " + bytes.getLong(offset));
+                    break;
+                case (ClassFileParser.CONSTANT_DOUBLE):
+                    s.append(" value: " + bytes.getDouble(offset));
+                    break;
+                case (ClassFileParser.CONSTANT_UTF8):
+                    s.append(" value: " + getUTF8(entryIndex));
+                    break;
             }
 
             return s.toString();
         }
     }
 
-    class FieldOrMethodInfo {
+    static class FieldOrMethodInfo {
 
         private final int _accessFlags;
 
@@ -640,105 +1036,38 @@ public class ClassFileParser extends AbstractParser {
         int getDescriptorIndex() {
             return _descriptorIndex;
         }
-
-        @Override
-        public String toString() {
-            StringBuilder s = new StringBuilder("");
-
-            try {
-                s.append("\n    name (#" + getNameIndex() + ") = " + toUTF8(getNameIndex()));
-
-                s.append("\n    signature (#" + getDescriptorIndex() + ") = " + toUTF8(getDescriptorIndex()));
-
-                String[] types = descriptorToTypes(toUTF8(getDescriptorIndex()));
-                for (String type : types) {
-                    s.append("\n        type = " + type);
-                }
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-
-            return s.toString();
-        }
     }
 
-    class AttributeInfo {
+    /**
+     * An attribute whose body is left in place in the class file buffer.
+     */
+    static class AttributeInfo {
+
+        private final String name;
 
-        private String name;
+        private final int offset;
 
-        private byte[] value;
+        private final int length;
 
-        public void setName(String name) {
+        AttributeInfo(String name, int offset, int length) {
             this.name = name;
+            this.offset = offset;
+            this.length = length;
         }
 
         public String getName() {
             return this.name;
         }
 
-        public void setValue(byte[] value) {
-            this.value = value;
+        public int getOffset() {
+            return this.offset;
         }
 
-        public byte[] getValue() {
-            return this.value;
+        public int getLength() {
+            return this.length;
         }
     }
 
-    /**
-     * Returns a string representation of this object.
-     *
-     * @return String representation.
-     */
-    @Override
-    public String toString() {
-
-        StringBuilder s = new StringBuilder();
-
-        try {
-
-            s.append("\n" + className + ":\n");
-
-            s.append("\nConstants:\n");
-            for (int i = 1; i < constantPool.length; i++) {
-                Constant entry = getConstantPoolEntry(i);
-                s.append("    " + i + ". " + entry.toString() + "\n");
-                if (entry.getTag() == CONSTANT_DOUBLE || entry.getTag() == CONSTANT_LONG) {
-                    i++;
-                }
-            }
-
-            s.append("\nClass Name: " + className + "\n");
-            s.append("Super Name: " + superClassName + "\n\n");
-
-            s.append(interfaceNames.length + " interfaces\n");
-            for (String interfaceName : interfaceNames) {
-                s.append("    " + interfaceName + "\n");
-            }
-
-            s.append("\n" + fields.length + " fields\n");
-            for (FieldOrMethodInfo field : fields) {
-                s.append(field.toString() + "\n");
-            }
-
-            s.append("\n" + methods.length + " methods\n");
-            for (FieldOrMethodInfo method : methods) {
-                s.append(method.toString() + "\n");
-            }
-
-            s.append("\nDependencies:\n");
-            for (JavaPackage jPackage : jClass.getImportedPackages()) {
-                s.append("    " + jPackage.getName() + "\n");
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return s.toString();
-    }
-
     /**
      * Test main.
      */
@@ -754,9 +1083,9 @@ public class ClassFileParser extends AbstractParser {
 
             ClassFileParser parser = new ClassFileParser();
 
-            parser.parse(new File(args[0]));
+            ParseContext context = parser.parseContext(new File(args[0]));
 
-            System.err.println(parser.toString());
+            System.err.println(context.toString());
 
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -0,0 +1,180 @@
+package jdepend.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * The <code>ClassInventory</code> class is the list of class files
+ * to be analyzed, found in a single pass over the class and jar files
+ * of a <code>FileManager</code>.
+ * <p>
+ * The class files are indexed by the file containing them: a class
+ * file stands for itself, and a jar, war, or zip file is listed with
+ * the names of its class file entries and of the archives nested in
+ * it, whose classes are not counted. A module of the runtime image is
+ * listed like a jar file, with the paths of its class files. Files are
+ * told apart by their names only, as a <code>FileManager</code> lists
+ * regular files.
+ * The number of classes is known before any class is parsed, and a
+ * <code>JavaClassBuilder</code> building from the inventory reads
+ * the listed entries without searching the directories or the jar
+ * files again.
+ * </p>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class ClassInventory {
+
+    private final Map<File, String[]> sources;
+    private final Map<File, Integer> classCounts;
+    private int classCount;
+
+
+    /**
+     * Lists the class files of the specified class, jar, war, zip, or
+     * jmod files and runtime modules. Jar files which cannot be read
+     * are reported and left out.
+     *
+     * @param files Class or Jar files.
+     * @param fm File manager deciding which entries are class files.
+     */
+    public ClassInventory(Collection<File> files, FileManager fm) {
+        sources = new LinkedHashMap<File, String[]>();
+        classCounts = new HashMap<File, Integer>();
+
+        for (File file : files) {
+            if (fm.isRuntimeModule(file)) {
+                try {
+                    String[] entries = listModuleEntries(file, fm);
+                    add(file, entries, countClasses(entries, fm));
+                } catch (IOException ioe) {
+                    System.err.println("\n" + ioe.getMessage());
+                }
+            } else if (fm.acceptClassFileName(file.getName())) {
+                add(file, null, 1);
+            } else if (fm.isModuleInfo(file.getName())) {
+                add(file, null, 0);
+            } else if (fm.acceptJarFileName(file.getName())) {
+                try {
+                    String[] entries = listEntries(file, fm);
+                    add(file, entries, countClasses(entries, fm));
+                } catch (IOException ioe) {
+                    System.err.println("\n" + ioe.getMessage());
+                }
+            } else {
+                System.err.println("\nFile is not a valid " + ".class, .jar, .war, .zip, or .jmod file: " + file.getPath());
+            }
+        }
+    }
+
+    /**
+     * @return The number of class files, including jar entries.
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @return The class and jar files, in the order in which they
+     *         were listed.
+     */
+    public Collection<File> getFiles() {
+        return Collections.unmodifiableSet(sources.keySet());
+    }
+
+    /**
+     * Indicates whether the specified file is a jar, war, zip, or jmod
+     * file, or a module of the runtime image.
+     *
+     * @param file Listed file.
+     * @return <code>true</code> if the file has entries.
+     */
+    public boolean isJarFile(File file) {
+        return sources.get(file) != null;
+    }
+
+    /**
+     * Returns the names of the class file and nested archive entries of
+     * the specified jar, war, or zip file, in the order of the archive,
+     * or the paths of the class files of a runtime module.
+     *
+     * @param file Listed jar file.
+     * @return Entry names, or an empty list for a class file.
+     */
+    public List<String> getEntries(File file) {
+        String[] entries = sources.get(file);
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    /**
+     * Returns the number of class files in the specified file.
+     *
+     * @param file Listed file.
+     * @return 1 for a class file, the number of class file entries
+     *         for a jar file, or 0 if the file is not listed.
+     */
+    public int getClassCount(File file) {
+        Integer count = classCounts.get(file);
+        return (count == null) ? 0 : count.intValue();
+    }
+
+    private void add(File file, String[] entries, int count) {
+        if (sources.containsKey(file)) {
+            return;
+        }
+        sources.put(file, entries);
+        classCounts.put(file, Integer.valueOf(count));
+        classCount += count;
+    }
+
+    private static int countClasses(String[] entries, FileManager fm) {
+        int count = 0;
+        for (String name : entries) {
+            if (fm.acceptClassFileName(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String[] listEntries(File file, FileManager fm) throws IOException {
+        List<String> names = new ArrayList<String>();
+
+        JarFile jarFile = new JarFile(file);
+        try {
+            for (ZipEntry e : fm.extractEntries(jarFile)) {
+                names.add(e.getName());
+            }
+        } finally {
+            jarFile.close();
+        }
+
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static String[] listModuleEntries(File module, FileManager fm) throws IOException {
+        List<String> names = new ArrayList<String>();
+
+        for (Path path : fm.extractEntries(module)) {
+            names.add(path.toString());
+        }
+
+        return names.toArray(new String[names.size()]);
+    }
+}
@@ -0,0 +1,152 @@
+package jdepend.framework;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The <code>ComponentIndex</code> class maps package names to the
+ * components containing them.
+ * <p>
+ * A package belongs to a component if the component is one of its
+ * enclosing packages, such as the component <code>com.acme</code> for
+ * the package <code>com.acme.util</code>, or if the component is a
+ * pattern matching one of its enclosing packages. When several
+ * components contain a package, the first one declared is used.
+ * </p>
+ * <p>
+ * The plain component names are held in a trie of package name
+ * segments, so a package is mapped by looking up its segments once,
+ * however many components there are. The pattern components are
+ * matched against all the enclosing packages in a single pass of
+ * <code>PackageMatcher.matchRoot()</code>. The component of each
+ * distinct package name is kept.
+ * </p>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+class ComponentIndex {
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final Node root;
+    private final PackageMatcher patterns;
+    private final int[] patternOrder;
+    private final Map<String, String> components;
+
+
+    /**
+     * Indexes the specified components.
+     *
+     * @param names Component names or patterns, in order.
+     */
+    ComponentIndex(Collection<String> names) {
+        root = new Node();
+        components = new ConcurrentHashMap<String, String>();
+
+        List<String> patternNames = new ArrayList<String>();
+        List<Integer> order = new ArrayList<Integer>();
+        int index = 0;
+        for (String name : names) {
+            if (PackageMatcher.isPattern(name)) {
+                patternNames.add(name);
+                order.add(Integer.valueOf(index));
+            } else {
+                Node node = root;
+                for (String segment : name.split("\\.", -1)) {
+                    node = node.add(segment);
+                }
+                if (node.index == NONE) {
+                    node.index = index;
+                    node.component = name;
+                }
+            }
+            index++;
+        }
+
+        patterns = patternNames.isEmpty() ? null : new PackageMatcher(patternNames);
+        patternOrder = new int[order.size()];
+        for (int i = 0; i < patternOrder.length; i++) {
+            patternOrder[i] = order.get(i).intValue();
+        }
+    }
+
+    /**
+     * Returns the component containing the specified package.
+     *
+     * @param packageName Package name.
+     * @return Component name, or the package name if no component
+     *         contains the package.
+     */
+    String toComponent(String packageName) {
+        String component = components.get(packageName);
+        if (component == null) {
+            component = find(packageName);
+            components.put(packageName, component);
+        }
+        return component;
+    }
+
+    private String find(String packageName) {
+        int first = NONE;
+        String component = packageName;
+
+        Node node = root;
+        int start = 0;
+        for (int dot = packageName.indexOf('.'); dot >= 0 && node != null; dot = packageName.indexOf('.', start)) {
+            node = node.next(packageName.substring(start, dot));
+            if (node != null && node.index < first) {
+                first = node.index;
+                component = node.component;
+            }
+            start = dot + 1;
+        }
+
+        if (patterns != null) {
+            int length = patterns.matchRoot(packageName);
+            if (length >= 0) {
+                String enclosing = packageName.substring(0, length);
+                int match = patterns.match(enclosing);
+                if (patternOrder[match] < first) {
+                    component = enclosing;
+                }
+            }
+        }
+
+        return component;
+    }
+
+    /**
+     * A node of the trie of component name segments.
+     */
+    private static class Node {
+        private Map<String, Node> children;
+        private int index;
+        private String component;
+
+        Node() {
+            this.index = NONE;
+        }
+
+        Node next(String segment) {
+            return (children == null) ? null : children.get(segment);
+        }
+
+        Node add(String segment) {
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package jdepend.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The <code>CycleEnumerator</code> class enumerates the elementary
+ * package dependency cycles of a package dependency graph.
+ * <p>
+ * Each distinct cycle is reported exactly once, starting at its
+ * first package in the order of <code>PackageCycles</code>. The
+ * cycles are found with an iterative version of Johnson's algorithm,
+ * run separately within each strongly connected component, and are
+ * streamed to a <code>CycleListener</code> as they are found.
+ * </p>
+ * <p>
+ * As a graph may contain exponentially many cycles, the enumeration
+ * may be bounded by the number of cycles reported, by the length of
+ * the cycles and by the time spent.
+ * </p>
+ * <p>
+ * Example use:
+ * </p>
+ * <blockquote>
+ *
+ * <pre>
+ * CycleEnumerator cycles = jdepend.getCycleEnumerator();
+ * cycles.setMaxCycles(100);
+ * cycles.setMaxCycleLength(5);
+ * cycles.enumerate(listener);
+ * </pre>
+ *
+ * </blockquote>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class CycleEnumerator {
+
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private final PackageCycles graph;
+    private int maxCycles;
+    private int maxCycleLength;
+    private long timeLimit;
+
+
+    /**
+     * Enumerates the cycles of the graph of the specified packages.
+     *
+     * @param packages Packages.
+     */
+    public CycleEnumerator(Collection<JavaPackage> packages) {
+        this(new PackageCycles(packages));
+    }
+
+    /**
+     * Enumerates the cycles of the specified, already analyzed graph.
+     *
+     * @param graph Strongly connected components of the graph.
+     */
+    public CycleEnumerator(PackageCycles graph) {
+        this.graph = graph;
+        this.maxCycles = Integer.MAX_VALUE;
+        this.maxCycleLength = Integer.MAX_VALUE;
+        this.timeLimit = 0;
+    }
+
+    /**
+     * Sets the maximum number of cycles reported.
+     *
+     * @param maxCycles Maximum number of cycles.
+     */
+    public void setMaxCycles(int maxCycles) {
+        if (maxCycles < 0) {
+            throw new IllegalArgumentException("Invalid cycle limit: " + maxCycles);
+        }
+        this.maxCycles = maxCycles;
+    }
+
+    /**
+     * Sets the maximum number of packages of the cycles reported.
+     * Longer cycles are not searched for.
+     *
+     * @param maxCycleLength Maximum cycle length, at least 2.
+     */
+    public void setMaxCycleLength(int maxCycleLength) {
+        if (maxCycleLength < 2) {
+            throw new IllegalArgumentException("Invalid cycle length: " + maxCycleLength);
+        }
+        this.maxCycleLength = maxCycleLength;
+    }
+
+    /**
+     * Sets the time after which the enumeration stops.
+     *
+     * @param millis Time limit in milliseconds, or 0 for no limit.
+     */
+    public void setTimeLimit(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Invalid time limit: " + millis);
+        }
+        this.timeLimit = millis;
+    }
+
+    /**
+     * Reports the elementary cycles to the specified listener.
+     *
+     * @param listener Cycle listener.
+     * @return <code>true</code> if all cycles within the length limit
+     *         were reported; <code>false</code> if the enumeration was
+     *         stopped by the cycle or time limit.
+     */
+    public boolean enumerate(CycleListener listener) {
+        PackageGraph packageGraph = graph.getGraph();
+        Search search = new Search(listener);
+        for (int c = 0; c < packageGraph.getComponentCount(); c++) {
+            if (packageGraph.isCyclicComponent(c) && !search.enumerate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the elementary cycles.
+     *
+     * @return Cycles, as reported to a <code>CycleListener</code>.
+     */
+    public List<List<JavaPackage>> getCycles() {
+        final List<List<JavaPackage>> cycles = new ArrayList<List<JavaPackage>>();
+        enumerate(new CycleListener() {
+            public void onCycle(List<JavaPackage> cycle) {
+                cycles.add(cycle);
+            }
+        });
+        return cycles;
+    }
+
+    /**
+     * The state of one enumeration.
+     */
+    private class Search {
+
+        private final CycleListener listener;
+        private final long deadline;
+        private int reported;
+        private int steps;
+
+        private int[][] adjacency;
+        private boolean[] blocked;
+        private List<Set<Integer>> blockedBy;
+        private int[] members;
+        private int[] local;
+
+        Search(CycleListener listener) {
+            this.listener = listener;
+            this.deadline = (timeLimit > 0) ? System.nanoTime() + timeLimit * 1000000L : 0;
+        }
+
+        /**
+         * Enumerates the cycles within a strongly connected component.
+         */
+        boolean enumerate(int c) {
+            PackageGraph packageGraph = graph.getGraph();
+            members = packageGraph.getComponentMembers(c);
+            int size = members.length;
+
+            if (local == null) {
+                local = new int[packageGraph.size()];
+            }
+            for (int i = 0; i < size; i++) {
+                local[members[i]] = i;
+            }
+
+            adjacency = new int[size][];
+            for (int i = 0; i < size; i++) {
+                int[] edges = packageGraph.getEfferents(members[i]);
+                int count = 0;
+                for (int w : edges) {
+                    if (packageGraph.getComponent(w) == c) {
+                        edges[count++] = local[w];
+                    }
+                }
+                adjacency[i] = Arrays.copyOf(edges, count);
+            }
+
+            blocked = new boolean[size];
+            blockedBy = new ArrayList<Set<Integer>>(size);
+            for (int i = 0; i < size; i++) {
+                blockedBy.add(new HashSet<Integer>());
+            }
+
+            for (int start = 0; start < size - 1; start++) {
+                for (int i = start; i < size; i++) {
+                    blocked[i] = false;
+                    blockedBy.get(i).clear();
+                }
+                if (!circuits(start)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reports the cycles through the specified start vertex whose
+         * other vertices all follow it.
+         */
+        private boolean circuits(int start) {
+            int size = adjacency.length;
+            int[] path = new int[size];
+            int[] position = new int[size];
+            boolean[] found = new boolean[size];
+            int depth = 0;
+
+            path[0] = start;
+            position[0] = 0;
+            found[0] = false;
+            blocked[start] = true;
+
+            while (depth >= 0) {
+                if (++steps % CLOCK_INTERVAL == 0 && deadline != 0 && System.nanoTime() > deadline) {
+                    return false;
+                }
+
+                int v = path[depth];
+                int[] targets = adjacency[v];
+
+                if (position[depth] < targets.length) {
+                    int w = targets[position[depth]++];
+                    if (w < start) {
+                        continue;
+                    }
+                    if (w == start) {
+                        if (reported >= maxCycles) {
+                            return false;
+                        }
+                        report(path, depth);
+                        found[depth] = true;
+                    } else if (!blocked[w]) {
+                        if (depth + 2 <= maxCycleLength) {
+                            depth++;
+                            path[depth] = w;
+                            position[depth] = 0;
+                            found[depth] = false;
+                            blocked[w] = true;
+                        } else {
+                            // A longer path is not searched; do not block
+                            // v as if no cycle went through w.
+                            found[depth] = true;
+                        }
+                    }
+                    continue;
+                }
+
+                if (found[depth]) {
+                    unblock(v);
+                } else {
+                    for (int w : targets) {
+                        if (w >= start) {
+                            blockedBy.get(w).add(Integer.valueOf(v));
+                        }
+                    }
+                }
+
+                depth--;
+                if (depth >= 0 && found[depth + 1]) {
+                    found[depth] = true;
+                }
+            }
+            return true;
+        }
+
+        private void unblock(int vertex) {
+            List<Integer> pending = new ArrayList<Integer>();
+            pending.add(Integer.valueOf(vertex));
+            while (!pending.isEmpty()) {
+                int u = pending.remove(pending.size() - 1).intValue();
+                blocked[u] = false;
+                Set<Integer> waiting = blockedBy.get(u);
+                for (Integer w : waiting) {
+                    if (blocked[w.intValue()]) {
+                        pending.add(w);
+                    }
+                }
+                waiting.clear();
+            }
+        }
+
+        private void report(int[] path, int depth) {
+            List<JavaPackage> cycle = new ArrayList<JavaPackage>(depth + 1);
+            for (int i = 0; i <= depth; i++) {
+                cycle.add(graph.getNode(members[path[i]]));
+            }
+            reported++;
+            listener.onCycle(Collections.unmodifiableList(cycle));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package jdepend.framework;
+
+import java.util.List;
+
+/**
+ * The <code>CycleListener</code> interface defines a listener
+ * notified of the package dependency cycles found by a
+ * <code>CycleEnumerator</code>.
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public interface CycleListener {
+
+    /**
+     * Called for every elementary package dependency cycle found.
+     *
+     * @param cycle Packages of the cycle in dependency order; each
+     *              package depends upon the next one and the last
+     *              package depends upon the first one.
+     */
+    void onCycle(List<JavaPackage> cycle);
+
+}
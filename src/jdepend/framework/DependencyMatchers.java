@@ -51,15 +51,15 @@ public class DependencyMatchers {
                     description.appendText("Non matching packages:");
                     for (JavaPackage[] packs : result.getNonMatchingPackages()) {
                         description.appendText("\n" + packs[0].getName() + "\n");
-                        final List<JavaPackage> exAff = (List<JavaPackage>) packs[0].getAfferents();
-                        final List<JavaPackage> effAff = (List<JavaPackage>) packs[1].getAfferents();
-                        final List<JavaPackage> exEff = (List<JavaPackage>) packs[0].getEfferents();
-                        final List<JavaPackage> effEff = (List<JavaPackage>) packs[1].getEfferents();
-                        if (!exAff.equals(effAff)) {
+                        final Collection<JavaPackage> exAff = packs[0].getAfferents();
+                        final Collection<JavaPackage> effAff = packs[1].getAfferents();
+                        final Collection<JavaPackage> exEff = packs[0].getEfferents();
+                        final Collection<JavaPackage> effEff = packs[1].getEfferents();
+                        if (!equals(exAff, effAff)) {
                             description.appendText("Expected afferents: " + toString(exAff) + "\n");
                             description.appendText("Found    afferents: " + toString(effAff) + "\n");
                         }
-                        if (!exEff.equals(effEff)) {
+                        if (!equals(exEff, effEff)) {
                             description.appendText("Expected efferents: " + toString(exEff) + "\n");
                             description.appendText("Found    efferents: " + toString(effEff) + "\n");
                         }
@@ -67,7 +67,7 @@ public class DependencyMatchers {
                 }
             }
 
-            private String toString(List<JavaPackage> packs) {
+            private String toString(Collection<JavaPackage> packs) {
                 String s = "";
                 for (JavaPackage pack : sorted(packs)) {
                     s += ", " + pack;
@@ -75,11 +75,11 @@ public class DependencyMatchers {
                 return s.length() > 0 ? s.substring(2) : s;
             }
 
-            private boolean equals(List<JavaPackage> p1, List<JavaPackage> p2) {
+            private boolean equals(Collection<JavaPackage> p1, Collection<JavaPackage> p2) {
                 return sorted(p1).equals(sorted(p2));
             }
 
-            private List<JavaPackage> sorted(List<JavaPackage> packs) {
+            private List<JavaPackage> sorted(Collection<JavaPackage> packs) {
                 List<JavaPackage> sorted = new ArrayList<JavaPackage>(packs);
                 Collections.sort(sorted, PACKAGE_COMPARATOR);
                 return sorted;
@@ -6,7 +6,15 @@ import jdepend.framework.JavaPackage;
 import jdepend.framework.exceptions.ForbidenEfferentException;
 
 /**
- * 
+ * The rules forbidding packages to depend upon other packages.
+ * <p>
+ * A rule applies to the package it is added for, or to all packages
+ * matching it when its name is a pattern, as documented by
+ * <code>PackageMatcher</code>. The rules are indexed by name, and the
+ * rules named by patterns are compiled together, so finding the rules
+ * of a package does not depend upon the number of rules.
+ * </p>
+ *
  * @author michal
  *
  */
@@ -14,32 +22,60 @@ import jdepend.framework.exceptions.ForbidenEfferentException;
 public class EfferentConstraints{
 
 	protected HashMap<String, JavaPackageWithEfferentRestriction> packages;
-	
+	private List<JavaPackageWithEfferentRestriction> patternPackages;
+	private PackageMatcher patternIndex;
+
     public EfferentConstraints() {
     	super();
         packages = new HashMap<String, JavaPackageWithEfferentRestriction>();
+        patternPackages = new ArrayList<JavaPackageWithEfferentRestriction>();
     }
 
- 
+
     /**
-     * 
-     * 
+     *
+     *
      * @param jPackageToCheck
      * @return true if non forbidden dependencies are found
      * @throws ForbidenEfferentException is forbidden efferent is found
      */
     public boolean areEfferentsValid(JavaPackage jPackageToCheck) throws ForbidenEfferentException {
-    	
-    	JavaPackageWithEfferentRestriction rulePackage = findPackageWithRestriction(jPackageToCheck
-	            .getName());
-	
-	    if (rulePackage != null) {
-	        jPackageToCheck.isAnyForbidenEfferentPresent(rulePackage.getNotSupportedEfferents());
+
+    	for (JavaPackageWithEfferentRestriction rulePackage : findPackagesWithRestriction(jPackageToCheck.getName())) {
+	        jPackageToCheck.isAnyForbidenEfferentPresent(rulePackage.getNotSupportedMatcher());
 	    }
-	
+
 	    return true;
 	}
-    
+
+    /**
+     * Checks all specified packages against all rules, and reports every
+     * forbidden efferent rather than the first one.
+     *
+     * @param jPackages Packages to check.
+     * @return Violations, in the order of the packages and of their
+     *         efferents; empty if all rules are fulfilled.
+     */
+    public List<Violation> validate(Collection<JavaPackage> jPackages) {
+    	List<Violation> violations = new ArrayList<Violation>();
+    	for (JavaPackage jPackage : jPackages) {
+    		List<JavaPackageWithEfferentRestriction> rulePackages = findPackagesWithRestriction(jPackage.getName());
+    		if (rulePackages.isEmpty()) {
+    			continue;
+    		}
+    		for (JavaPackage efferent : jPackage.getEfferents()) {
+    			for (JavaPackageWithEfferentRestriction rulePackage : rulePackages) {
+    				PackageMatcher forbidden = rulePackage.getNotSupportedMatcher();
+    				int index = forbidden.match(efferent.getName());
+    				if (index >= 0) {
+    					violations.add(new Violation(jPackage, efferent, rulePackage.getName(), forbidden.getPattern(index)));
+    				}
+    			}
+    		}
+    	}
+    	return violations;
+    }
+
     public JavaPackageWithEfferentRestriction addPackage(String packageName) {
     	JavaPackageWithEfferentRestriction jPackage = (JavaPackageWithEfferentRestriction) packages.get(packageName);
 	    if (jPackage == null) {
@@ -48,26 +84,103 @@ public class EfferentConstraints{
 	    }
 	    return jPackage;
 	}
-    
+
     private void addPackage(JavaPackageWithEfferentRestriction jPackage) {
 	    if (!packages.containsValue(jPackage)) {
 	        packages.put(jPackage.getName(), jPackage);
+	        if (PackageMatcher.isPattern(jPackage.getName())) {
+	        	patternPackages.add(jPackage);
+	        	patternIndex = null;
+	        }
 	    }
 	}
 
+	/**
+	 * Returns the first rule applying to the specified package: the rule
+	 * added for the package itself, or else the first rule whose pattern
+	 * matches it.
+	 */
 	JavaPackageWithEfferentRestriction findPackageWithRestriction(String name) {
-		
-		for (String packageName : packages.keySet()) {
-			if(packageName.contains(name)){
-				return packages.get(packageName);
+		List<JavaPackageWithEfferentRestriction> rulePackages = findPackagesWithRestriction(name);
+		return rulePackages.isEmpty() ? null : rulePackages.get(0);
+	}
+
+	/**
+	 * Returns the rules applying to the specified package: the rule added
+	 * for the package itself, followed by the rules whose patterns match
+	 * it, in the order they were added.
+	 */
+	List<JavaPackageWithEfferentRestriction> findPackagesWithRestriction(String name) {
+		List<JavaPackageWithEfferentRestriction> rulePackages = new ArrayList<JavaPackageWithEfferentRestriction>(1);
+
+		JavaPackageWithEfferentRestriction exact = packages.get(name);
+		if (exact != null) {
+			rulePackages.add(exact);
+		}
+
+		if (!patternPackages.isEmpty()) {
+			for (int index : getPatternIndex().matchAll(name)) {
+				JavaPackageWithEfferentRestriction rulePackage = patternPackages.get(index);
+				if (rulePackage != exact) {
+					rulePackages.add(rulePackage);
+				}
 			}
 		}
-    	
-		return null;
-		
+
+		return rulePackages;
+	}
+
+	private PackageMatcher getPatternIndex() {
+		if (patternIndex == null) {
+			List<String> patterns = new ArrayList<String>(patternPackages.size());
+			for (JavaPackageWithEfferentRestriction rulePackage : patternPackages) {
+				patterns.add(rulePackage.getName());
+			}
+			patternIndex = new PackageMatcher(patterns);
+		}
+		return patternIndex;
 	}
 
+	/**
+	 * A package depending upon a package forbidden by a rule.
+	 */
+	public static class Violation {
+		private final JavaPackage jPackage;
+		private final JavaPackage efferent;
+		private final String rule;
+		private final String forbidden;
+
+		Violation(JavaPackage jPackage, JavaPackage efferent, String rule, String forbidden) {
+			this.jPackage = jPackage;
+			this.efferent = efferent;
+			this.rule = rule;
+			this.forbidden = forbidden;
+		}
+
+		public JavaPackage getPackage() {
+			return jPackage;
+		}
+
+		public JavaPackage getEfferent() {
+			return efferent;
+		}
+
+		/**
+		 * @return Name or pattern of the rule's package.
+		 */
+		public String getRule() {
+			return rule;
+		}
 
+		/**
+		 * @return Forbidden package name or pattern matching the efferent.
+		 */
+		public String getForbidden() {
+			return forbidden;
+		}
 
- 
-}
\ No newline at end of file
+		public String toString() {
+			return jPackage.getName() + " -> " + efferent.getName() + " (forbidden by " + forbidden + ")";
+		}
+	}
+}
@@ -2,15 +2,59 @@ package jdepend.framework;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 
 /**
  * The <code>FileManager</code> class is responsible for extracting
  * Java class files (<code>.class</code> files) from a collection of
  * registered directories.
+ * <p>
+ * The directories are walked with <code>java.nio.file</code>, which
+ * reads the attributes of each file once, and the registered
+ * directories may be walked in parallel. Symbolic links are followed.
+ * </p>
+ * <p>
+ * The classes of the Java platform are read in place: a directory
+ * named <code>jrt:/</code> stands for the runtime image of the running
+ * JVM, and <code>jrt:/java.sql</code> for one of its modules, while
+ * <code>.jmod</code> files are read like jar files. Each module of the
+ * runtime image is reported as a source of its own, named
+ * <code>jrt:/</code> followed by the module name. Registered module
+ * names restrict the modules of the runtime image and the jmod files
+ * which are analyzed.
+ * </p>
  *
  * @author <b>Mike Clark</b>
  * @author Clarkware Consulting, Inc.
@@ -18,13 +62,44 @@ import java.util.TreeSet;
 
 public class FileManager {
 
+    private static final String MODULE_INFO = "module-info.class";
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final String RUNTIME_IMAGE = "jrt:";
+    private static final String JMOD = ".jmod";
+    private static final String JMOD_CLASSES = "classes/";
+
     private List<File> directories;
+    private List<String> modules;
+    private volatile PackageMatcher moduleMatcher;
     private boolean acceptInnerClasses;
+    private int threadCount;
+    private int targetRelease;
 
 
     public FileManager() {
         directories = new ArrayList<File>();
+        modules = new ArrayList<String>();
         acceptInnerClasses = true;
+        threadCount = 1;
+        targetRelease = 0;
+    }
+
+    /**
+     * Sets the number of threads walking the registered directories.
+     * With a single thread (the default) the directories are walked
+     * one after the other on the calling thread.
+     *
+     * @param threadCount Number of threads.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
     }
 
     /**
@@ -37,17 +112,85 @@ public class FileManager {
         acceptInnerClasses = b;
     }
 
+    /**
+     * Sets the Java release for which the classes of multi-release jar
+     * files are selected. Of the variants of a class found in the jar
+     * file and in its <code>META-INF/versions/</code> directories, only
+     * the one of the highest release not above the target release is
+     * analyzed. With a release of 0 (the default) only the base
+     * variants are analyzed, as in a jar file which is not
+     * multi-release.
+     *
+     * @param targetRelease Java release, such as 11 or 17, or 0.
+     */
+    public void setTargetRelease(int targetRelease) {
+        if (targetRelease < 0) {
+            throw new IllegalArgumentException("Invalid target release: " + targetRelease);
+        }
+        this.targetRelease = targetRelease;
+    }
+
+    public int getTargetRelease() {
+        return targetRelease;
+    }
+
     public void addDirectory(String name) throws IOException {
 
         File directory = new File(name);
 
         if (directory.isDirectory() || acceptJarFile(directory)) {
             directories.add(directory);
+        } else if (name.startsWith(RUNTIME_IMAGE)) {
+            String module = name.substring(RUNTIME_IMAGE.length());
+            while (module.startsWith("/")) {
+                module = module.substring(1);
+            }
+            if (module.length() > 0 && !Files.isDirectory(getRuntimeImage().getPath("/modules", module))) {
+                throw new IOException("Invalid runtime module: " + name);
+            }
+            directories.add(new RuntimeImageFile(module));
         } else {
             throw new IOException("Invalid directory or JAR file: " + name);
         }
     }
 
+    /**
+     * Adds a module to the modules analyzed. Once a module is added,
+     * only the modules added are read from the runtime image and from
+     * jmod files. The name may be a pattern as documented by
+     * <code>PackageMatcher</code>: a name ending with <code>*</code>,
+     * such as <code>java.*</code>, adds all modules starting with the
+     * name.
+     *
+     * @param name Module name or pattern.
+     */
+    public synchronized void addModule(String name) {
+        modules.add(name);
+        moduleMatcher = null;
+    }
+
+    /**
+     * Indicates whether the specified module is analyzed.
+     *
+     * @param name Module name.
+     * @return <code>true</code> if no module was added, or if the
+     *         module matches an added module.
+     */
+    public boolean acceptModule(String name) {
+        PackageMatcher m = moduleMatcher;
+        if (m == null) {
+            m = compileModules();
+        }
+        return m.size() == 0 || m.matches(name);
+    }
+
+    private synchronized PackageMatcher compileModules() {
+        if (moduleMatcher == null) {
+            moduleMatcher = new PackageMatcher(modules);
+        }
+        return moduleMatcher;
+    }
+
     public boolean acceptFile(File file) {
         return acceptClassFile(file) || acceptJarFile(file);
     }
@@ -57,6 +200,10 @@ public class FileManager {
     }
 
     public boolean acceptClassFileName(String name) {
+        if (isModuleInfo(name)) {
+            return false;
+        }
+
         if (!acceptInnerClasses) {
             if (name.toLowerCase().indexOf("$") > 0) {
                 return false;
@@ -66,59 +213,338 @@ public class FileManager {
         return name.toLowerCase().endsWith(".class");
     }
 
+    /**
+     * Indicates whether the specified file or entry name is that of a
+     * module descriptor, which is analyzed apart from the classes.
+     *
+     * @param name File or entry name.
+     * @return <code>true</code> for a <code>module-info.class</code> file.
+     */
+    public boolean isModuleInfo(String name) {
+        int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf(File.separatorChar));
+        return name.substring(slash + 1).equals(MODULE_INFO);
+    }
+
     public boolean acceptJarFile(File file) {
-        return isJar(file) || isZip(file) || isWar(file);
+        return file.isFile() && acceptJarFileName(file.getName());
+    }
+
+    public boolean acceptJarFileName(String name) {
+        String lowerName = name.toLowerCase();
+        return lowerName.endsWith(".jar") || lowerName.endsWith(".zip") || lowerName.endsWith(".war")
+                || lowerName.endsWith(JMOD);
+    }
+
+    /**
+     * Indicates whether the specified file stands for a module of the
+     * runtime image, as reported by <code>discover()</code>. Only the
+     * files created for the runtime image by this class qualify; a
+     * file of the default file system whose path starts with
+     * <code>jrt:</code> does not.
+     *
+     * @param file Source file.
+     * @return <code>true</code> for a <code>jrt:/</code> module.
+     */
+    public boolean isRuntimeModule(File file) {
+        return isRuntimeImage(file) && moduleName(file).length() > 0;
+    }
+
+    /**
+     * Returns the class files and module descriptor of the specified
+     * module of the runtime image, sorted by path.
+     *
+     * @param module Runtime module.
+     * @return Paths in the runtime image.
+     * @throws IOException If the module cannot be read.
+     */
+    public List<Path> extractEntries(File module) throws IOException {
+        final List<Path> paths = new ArrayList<Path>();
+
+        Path root = getRuntimeImage().getPath("/modules", moduleName(module));
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                String name = path.getFileName().toString();
+                if (acceptClassFileName(name) || isModuleInfo(name)) {
+                    paths.add(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Returns the file system of the runtime image of the running JVM.
+     *
+     * @return The <code>jrt:/</code> file system.
+     * @throws IOException If the JVM has no runtime image.
+     */
+    public FileSystem getRuntimeImage() throws IOException {
+        try {
+            return FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (FileSystemNotFoundException fsnfe) {
+            throw new IOException("No runtime image: " + fsnfe.getMessage());
+        } catch (ProviderNotFoundException pnfe) {
+            throw new IOException("No runtime image: " + pnfe.getMessage());
+        }
+    }
+
+    /**
+     * Returns the entries of the specified jar file to be analyzed: its
+     * class files, module descriptor and nested archives, in the order of
+     * the jar file. Of the variants of a class in a multi-release jar
+     * file, only the one for the target release is returned. Of a jmod
+     * file, only the entries in its <code>classes/</code> section are
+     * returned.
+     *
+     * @param jarFile Jar, war, or zip file.
+     * @return Entries.
+     * @throws IOException If the manifest cannot be read.
+     */
+    public List<ZipEntry> extractEntries(JarFile jarFile) throws IOException {
+        boolean jmod = jarFile.getName().toLowerCase().endsWith(JMOD);
+        boolean multiRelease = !jmod && targetRelease > 0 && isMultiRelease(jarFile);
+        Map<String, ZipEntry> selected = new LinkedHashMap<String, ZipEntry>();
+        Map<String, Integer> releases = new HashMap<String, Integer>();
+
+        Enumeration<? extends ZipEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry e = entries.nextElement();
+            String name = e.getName();
+            int release = 0;
+
+            if (jmod) {
+                // The classes of a jmod file are kept apart from its
+                // native libraries, commands and configuration.
+                if (!name.startsWith(JMOD_CLASSES)) {
+                    continue;
+                }
+                name = name.substring(JMOD_CLASSES.length());
+                if (!acceptClassFileName(name) && !isModuleInfo(name)) {
+                    continue;
+                }
+            } else if (isVersioned(name)) {
+                int slash = name.indexOf('/', VERSIONS.length());
+                release = (slash > 0) ? parseRelease(name.substring(VERSIONS.length(), slash)) : -1;
+                if (!multiRelease || release < 1 || release > targetRelease) {
+                    continue;
+                }
+                name = name.substring(slash + 1);
+                if (!acceptClassFileName(name) && !isModuleInfo(name)) {
+                    continue;
+                }
+            } else if (!acceptFileName(name)) {
+                continue;
+            }
+
+            // Replacing a variant keeps the position of the first one.
+            Integer previous = releases.get(name);
+            if (previous == null || previous.intValue() < release) {
+                selected.put(name, e);
+                releases.put(name, Integer.valueOf(release));
+            }
+        }
+
+        return new ArrayList<ZipEntry>(selected.values());
+    }
+
+    /**
+     * Indicates whether the specified entry name is in the versioned
+     * directories of a multi-release jar file.
+     */
+    boolean isVersioned(String name) {
+        return name.startsWith(VERSIONS);
     }
 
     public Collection<File> extractFiles() {
-        Collection<File> files = new TreeSet<File>();
+        final Collection<File> files = new TreeSet<File>();
+
+        discover(new SourceListener() {
+            public void onSource(File file) {
+                files.add(file);
+            }
+        });
+
+        return files;
+    }
+
+    /**
+     * Walks the registered directories and reports each class and jar
+     * file to the specified listener as soon as it is found. A file
+     * found in more than one registered directory is reported once.
+     *
+     * @param listener Source listener.
+     */
+    public void discover(final SourceListener listener) {
+        final Set<File> seen = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
 
-        for (File directory : directories) {
-            collectFiles(directory, files);
+        if (threadCount == 1 || directories.size() < 2) {
+            for (File directory : directories) {
+                walk(directory, seen, listener);
+            }
+            return;
         }
 
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, directories.size()));
+        try {
+            List<Future<Void>> walks = new ArrayList<Future<Void>>();
+            for (final File directory : directories) {
+                walks.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        walk(directory, seen, listener);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> walk : walks) {
+                walk.get();
+            }
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts the class and jar files found in the specified directory
+     * and its subdirectories, whether or not the directory is registered.
+     *
+     * @param directory Directory, or a class or jar file.
+     * @return Class and jar files, or an empty collection if the file
+     *         does not exist.
+     */
+    public Collection<File> extractFiles(File directory) {
+        final Collection<File> files = new TreeSet<File>();
+
+        walk(directory, new HashSet<File>(), new SourceListener() {
+            public void onSource(File file) {
+                files.add(file);
+            }
+        });
+
         return files;
     }
 
-    private void collectFiles(File directory, Collection<File> files) {
-        if (directory.isFile()) {
-            addFile(directory, files);
-        } else {
+    /**
+     * Walks the specified directory, or visits the specified file, and
+     * reports the class and jar files not seen before.
+     */
+    private void walk(File start, final Set<File> seen, final SourceListener listener) {
+        if (isRuntimeImage(start)) {
+            walkRuntimeImage(moduleName(start), seen, listener);
+            return;
+        }
 
-            String[] directoryFiles = directory.list();
+        try {
+            Files.walkFileTree(start.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
 
-            for (String directoryFile : directoryFiles) {
+                        public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                            if (attrs.isRegularFile() && acceptFileName(path.getFileName().toString())) {
+                                File file = path.toFile();
+                                if (seen.add(file)) {
+                                    synchronized (listener) {
+                                        listener.onSource(file);
+                                    }
+                                }
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
 
-                File file = new File(directory, directoryFile);
-                if (acceptFile(file)) {
-                    addFile(file, files);
-                } else if (file.isDirectory()) {
-                    collectFiles(file, files);
+                        public FileVisitResult visitFileFailed(Path path, IOException ioe) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException ioe) {
+            System.err.println("\n" + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Reports the accepted modules of the runtime image, or the
+     * specified module only, which were not seen before.
+     */
+    private void walkRuntimeImage(String module, Set<File> seen, SourceListener listener) {
+        List<String> names = new ArrayList<String>();
+        try {
+            if (module.length() > 0) {
+                names.add(module);
+            } else {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(getRuntimeImage().getPath("/modules"));
+                try {
+                    for (Path path : stream) {
+                        names.add(path.getFileName().toString());
+                    }
+                } finally {
+                    stream.close();
                 }
+                Collections.sort(names);
             }
+        } catch (IOException ioe) {
+            System.err.println("\n" + ioe.getMessage());
         }
-    }
 
-    private void addFile(File f, Collection<File> files) {
-        if (!files.contains(f)) {
-            files.add(f);
+        for (String name : names) {
+            File file = new RuntimeImageFile(name);
+            if (acceptModule(name) && seen.add(file)) {
+                synchronized (listener) {
+                    listener.onSource(file);
+                }
+            }
         }
     }
 
-    private boolean isWar(File file) {
-        return existsWithExtension(file, ".war");
+    private static boolean isRuntimeImage(File file) {
+        return file instanceof RuntimeImageFile;
     }
 
-    private boolean isZip(File file) {
-        return existsWithExtension(file, ".zip");
+    /**
+     * Returns the module named by a runtime image file, or an empty
+     * name for the whole image.
+     */
+    private static String moduleName(File file) {
+        return ((RuntimeImageFile) file).module;
     }
 
-    private boolean isJar(File file) {
-        return existsWithExtension(file, ".jar");
+    private boolean isMultiRelease(JarFile jarFile) throws IOException {
+        Manifest manifest = jarFile.getManifest();
+        return manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"));
     }
 
-    private boolean existsWithExtension(File file, String extension) {
-        return file.isFile() && file.getName().toLowerCase().endsWith(extension);
+    private static int parseRelease(String release) {
+        try {
+            return Integer.parseInt(release);
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
     }
 
-}
\ No newline at end of file
+    private boolean acceptFileName(String name) {
+        if (name.toLowerCase().endsWith(JMOD)) {
+            return acceptModule(name.substring(0, name.length() - JMOD.length()));
+        }
+        return acceptClassFileName(name) || acceptJarFileName(name) || isModuleInfo(name);
+    }
+
+    /**
+     * A file standing for the runtime image, or for one of its
+     * modules, named <code>jrt:/</code> followed by the module name.
+     */
+    private static class RuntimeImageFile extends File {
+        private final String module;
+
+        RuntimeImageFile(String module) {
+            super(RUNTIME_IMAGE + "/" + module);
+            this.module = module;
+        }
+    }
+}
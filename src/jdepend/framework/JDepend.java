@@ -1,5 +1,6 @@
 package jdepend.framework;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
@@ -76,6 +77,7 @@ import jdepend.framework.exceptions.ForbidenEfferentException;
  * JDepend jdepend = new JDepend();
  * jdepend.addDirectory(&quot;/path/to/classes&quot;);
  * Collection packages = jdepend.analyze();
+ * PackageCycles cycles = jdepend.getPackageCycles();
  *
  * Iterator i = packages.iterator();
  * while (i.hasNext()) {
@@ -86,7 +88,7 @@ import jdepend.framework.exceptions.ForbidenEfferentException;
  * 	float A = jPackage.abstractness();
  * 	float I = jPackage.instability();
  * 	float D = jPackage.distance();
- * 	boolean b = jPackage.containsCycle();
+ * 	boolean b = cycles.containsCycle(jPackage);
  * }
  * </pre>
  * 
@@ -103,11 +105,26 @@ import jdepend.framework.exceptions.ForbidenEfferentException;
 public class JDepend {
 
 	private Map<String, JavaPackage> packages;
+	private PackageTable packageTable;
 	private FileManager fileManager;
 	private PackageFilter filter;
 	private ClassFileParser parser;
 	private JavaClassBuilder builder;
 	private Collection<String> components;
+	private ComponentIndex componentIndex;
+	private ParseCache parseCache;
+	private boolean parseCacheLoaded;
+	private Map<File, Collection<JavaClass>> sources;
+	private Map<String, int[]> classReferences;
+	private Map<JavaClass, JavaPackage[]> analyzedPackages;
+	private Map<JavaPackage, Map<JavaPackage, int[]>> dependencyReferences;
+	private Set<String> registeredPackages;
+	private ClassInventory inventory;
+	private boolean inventoryAnalyzed;
+	private boolean pipelined;
+	private Map<String, JavaClass> modules;
+	private PackageCycles packageCycles;
+	private long packageCyclesFingerprint;
 
 	public JDepend() {
 		this(PackageFilter.all().excludingProperties());
@@ -118,9 +135,17 @@ public class JDepend {
 		setFilter(filter);
 
 		this.packages = new HashMap<String, JavaPackage>();
+		this.packageTable = new PackageTable();
+		this.sources = new LinkedHashMap<File, Collection<JavaClass>>();
+		this.classReferences = new HashMap<String, int[]>();
+		this.analyzedPackages = new IdentityHashMap<JavaClass, JavaPackage[]>();
+		this.dependencyReferences = new HashMap<JavaPackage, Map<JavaPackage, int[]>>();
+		this.registeredPackages = new HashSet<String>();
+		this.modules = new LinkedHashMap<String, JavaClass>();
 		this.fileManager = new FileManager();
 
 		this.parser = new ClassFileParser(filter);
+		this.parser.setPackageTable(packageTable);
 		this.builder = new JavaClassBuilder(parser, fileManager);
 
 		PropertyConfigurator config = new PropertyConfigurator();
@@ -130,21 +155,177 @@ public class JDepend {
 
 	/**
 	 * Analyzes the registered directories and returns the collection of
-	 * analyzed packages.
+	 * analyzed packages. The classes of a previous analysis are replaced.
+	 * <p>
+	 * The class files listed by a preceding <code>countClasses()</code> are
+	 * analyzed without searching the directories again, unless the analysis
+	 * is pipelined.
+	 * </p>
 	 *
 	 * @return Collection of analyzed packages.
 	 */
 	public Collection<JavaPackage> analyze() {
 
-		Collection<JavaClass> classes = builder.build();
+		if (parseCache != null) {
+			try {
+				parseCache.load(getFilter());
+				parseCacheLoaded = true;
+			} catch (IOException ioe) {
+				System.err.println("\n" + ioe.getMessage());
+			}
+		}
 
-		for (JavaClass aClass : classes) {
-			analyzeClass(aClass);
+		Set<JavaPackage> affected = new HashSet<JavaPackage>();
+		for (File source : new ArrayList<File>(sources.keySet())) {
+			removeSource(source, affected);
+		}
+		prune(affected);
+
+		if (pipelined) {
+			inventory = null;
+			analyzePipelined();
+		} else {
+			if (inventory == null || inventoryAnalyzed) {
+				inventory = builder.inventory();
+			}
+			inventoryAnalyzed = true;
+			addSources(build(inventory));
 		}
+		packageCycles = null;
 
 		return getPackages();
 	}
 
+	/**
+	 * Updates the analyzed packages after the specified class files, jar files
+	 * or directories changed, without analyzing the unchanged ones again.
+	 * <p>
+	 * The classes of a changed file are replaced by the classes it now
+	 * contains; a changed directory is searched for class and jar files, and
+	 * the files analyzed before which it no longer contains are removed. The
+	 * classes of removed files, or of all files analyzed before in a removed
+	 * directory, are removed. The couplings of the affected packages follow,
+	 * and packages neither containing nor referenced by analyzed classes are
+	 * dropped.
+	 * </p>
+	 * <p>
+	 * The files need not be in a registered directory, but only the registered
+	 * directories are analyzed by a subsequent <code>analyze()</code>.
+	 * </p>
+	 *
+	 * @param changed
+	 *            Added or changed files or directories.
+	 * @param removed
+	 *            Removed files or directories.
+	 * @return Collection of analyzed packages.
+	 */
+	public Collection<JavaPackage> update(Collection<File> changed, Collection<File> removed) {
+
+		if (parseCache != null && !parseCacheLoaded) {
+			try {
+				parseCache.load(getFilter());
+				parseCacheLoaded = true;
+			} catch (IOException ioe) {
+				System.err.println("\n" + ioe.getMessage());
+			}
+		}
+
+		Set<JavaPackage> affected = new HashSet<JavaPackage>();
+		for (File file : removed) {
+			for (File source : sourcesIn(file)) {
+				removeSource(source, affected);
+			}
+		}
+
+		Set<File> files = new LinkedHashSet<File>();
+		for (File file : changed) {
+			Collection<File> current = fileManager.extractFiles(file);
+			for (File source : sourcesIn(file)) {
+				removeSource(source, affected);
+			}
+			files.addAll(current);
+		}
+
+		Map<File, Collection<JavaClass>> built = build(new ClassInventory(files, fileManager));
+		inventory = null;
+		prune(affected);
+		addSources(built);
+		packageCycles = null;
+
+		return getPackages();
+	}
+
+	/**
+	 * Analyzes the classes of the registered directories as they are parsed,
+	 * while the directories are still being searched.
+	 */
+	private void analyzePipelined() {
+		builder.build(new BuildListener() {
+			public void onBuiltClass(File source, JavaClass jClass) {
+				File key = source.getAbsoluteFile();
+				Collection<JavaClass> classes = sources.get(key);
+				if (classes == null) {
+					classes = new ArrayList<JavaClass>();
+					sources.put(key, classes);
+				}
+				classes.add(jClass);
+				analyzeClass(jClass);
+			}
+		});
+
+		saveParseCache();
+	}
+
+	private Map<File, Collection<JavaClass>> build(ClassInventory classes) {
+		Map<File, Collection<JavaClass>> built = builder.build(classes);
+		saveParseCache();
+		return built;
+	}
+
+	private void saveParseCache() {
+		if (parseCache != null) {
+			try {
+				parseCache.save();
+			} catch (IOException ioe) {
+				System.err.println("\n" + ioe.getMessage());
+			}
+		}
+	}
+
+	private void addSources(Map<File, Collection<JavaClass>> built) {
+		for (Map.Entry<File, Collection<JavaClass>> source : built.entrySet()) {
+			sources.put(source.getKey().getAbsoluteFile(), source.getValue());
+			for (JavaClass aClass : source.getValue()) {
+				analyzeClass(aClass);
+			}
+		}
+	}
+
+	/**
+	 * Returns the analyzed sources which are the specified file or are
+	 * contained in the specified directory.
+	 */
+	private Collection<File> sourcesIn(File file) {
+		File absolute = file.getAbsoluteFile();
+		String prefix = absolute.getPath() + File.separator;
+		Collection<File> result = new ArrayList<File>();
+		for (File source : sources.keySet()) {
+			if (source.equals(absolute) || source.getPath().startsWith(prefix)) {
+				result.add(source);
+			}
+		}
+		return result;
+	}
+
+	private void removeSource(File source, Set<JavaPackage> affected) {
+		Collection<JavaClass> classes = sources.remove(source);
+		if (classes != null) {
+			for (JavaClass aClass : classes) {
+				removeClass(aClass, affected);
+			}
+		}
+	}
+
 	/**
 	 * Adds the specified directory name to the collection of directories to be
 	 * analyzed.
@@ -156,16 +337,40 @@ public class JDepend {
 	 */
 	public void addDirectory(String name) throws IOException {
 		fileManager.addDirectory(name);
+		inventory = null;
 	}
 
 	/**
-	 * Sets the list of components.
+	 * Adds a module to the modules analyzed. A directory named
+	 * <code>jrt:/</code> analyzes the runtime image of the running JVM in
+	 * place, and jmod files are analyzed like jar files; once a module is
+	 * added, only the modules added are analyzed from either. The classes
+	 * of a runtime module are attributed to it by
+	 * <code>JavaClass.getArchive()</code>, such as <code>jrt:/java.sql</code>.
+	 *
+	 * @param name
+	 *            Module name, or a pattern as documented by
+	 *            <code>PackageMatcher</code>.
+	 */
+	public void addModule(String name) {
+		fileManager.addModule(name);
+		inventory = null;
+	}
+
+	/**
+	 * Sets the list of components. The packages within a component are
+	 * analyzed as the component itself. A component may be a pattern, as
+	 * documented by <code>PackageMatcher</code>: with the component
+	 * <code>com.acme.*</code>, the packages within
+	 * <code>com.acme.billing</code> are analyzed as that package. The first
+	 * component containing a package is used.
 	 *
 	 * @param components
 	 *            Comma-separated list of components.
 	 */
 	public void setComponents(String components) {
 		this.components = new ArrayList<String>();
+		this.componentIndex = null;
 		StringTokenizer st = new StringTokenizer(components, ",");
 		while (st.hasMoreTokens()) {
 			String component = st.nextToken();
@@ -173,6 +378,76 @@ public class JDepend {
 		}
 	}
 
+	/**
+	 * Sets the number of worker threads used to search the registered
+	 * directories and to parse the class files. With more than one thread the
+	 * directories are searched and the files are parsed concurrently; the
+	 * analyzed packages are the same as with a single thread.
+	 *
+	 * @param threadCount
+	 *            Number of worker threads.
+	 */
+	public void setThreadCount(int threadCount) {
+		builder.setThreadCount(threadCount);
+		fileManager.setThreadCount(threadCount);
+	}
+
+	/**
+	 * Sets the Java release for which the classes of multi-release jar files
+	 * are analyzed. Only one variant of each class is analyzed: the one for
+	 * the highest release not above the target release, or the base variant
+	 * with a release of 0 (the default).
+	 *
+	 * @param targetRelease
+	 *            Java release, such as 11 or 17, or 0.
+	 */
+	public void setTargetRelease(int targetRelease) {
+		fileManager.setTargetRelease(targetRelease);
+		inventory = null;
+	}
+
+	/**
+	 * Sets how deeply archives nested in jar, war, or zip files are analyzed,
+	 * such as the jars in <code>WEB-INF/lib</code> of a war file or in
+	 * <code>BOOT-INF/lib</code> of a Spring Boot jar. The classes of nested
+	 * archives are attributed to them by <code>JavaClass.getArchive()</code>
+	 * and <code>JavaPackage.getArchives()</code>.
+	 *
+	 * @param archiveDepth
+	 *            Nesting depth, or 0 (the default) to ignore nested archives.
+	 */
+	public void setArchiveDepth(int archiveDepth) {
+		builder.setArchiveDepth(archiveDepth);
+	}
+
+	/**
+	 * Sets whether <code>analyze()</code> runs as a pipeline. A pipelined
+	 * analysis searches the registered directories, parses the class files
+	 * and adds the parsed classes to the packages at the same time, without
+	 * first collecting all files and all classes. The analyzed packages are
+	 * the same, but their classes and couplings may be listed in another
+	 * order.
+	 *
+	 * @param pipelined
+	 *            <code>true</code> to pipeline the analysis.
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * Sets the cache of the classes parsed by previous analyses. The cache is
+	 * loaded before and saved after the class files are parsed, so that only
+	 * new or changed class files are parsed again.
+	 *
+	 * @param parseCache
+	 *            Parse cache, or <code>null</code> to parse all class files.
+	 */
+	public void setParseCache(ParseCache parseCache) {
+		this.parseCache = parseCache;
+		builder.setParseCache(parseCache);
+	}
+
 	/**
 	 * Determines whether inner classes are analyzed.
 	 *
@@ -182,6 +457,19 @@ public class JDepend {
 	 */
 	public void analyzeInnerClasses(boolean b) {
 		fileManager.acceptInnerClasses(b);
+		inventory = null;
+	}
+
+	/**
+	 * Returns the analyzed module descriptors (<code>module-info</code>
+	 * classes), which are not part of any package. Each declares a module by
+	 * <code>JavaClass.getModuleName()</code> and the modules it requires by
+	 * <code>JavaClass.getRequiredModules()</code>.
+	 *
+	 * @return Module descriptors.
+	 */
+	public Collection<JavaClass> getModules() {
+		return Collections.unmodifiableCollection(modules.values());
 	}
 
 	/**
@@ -204,6 +492,16 @@ public class JDepend {
 		return packages.get(name);
 	}
 
+	/**
+	 * Returns the table of canonical packages shared by the parser, the
+	 * parsed classes and the analyzed packages.
+	 *
+	 * @return Package table.
+	 */
+	public PackageTable getPackageTable() {
+		return packageTable;
+	}
+
 	/**
 	 * Returns the number of analyzed Java packages.
 	 *
@@ -214,27 +512,101 @@ public class JDepend {
 	}
 
 	/**
-	 * Returns the number of registered Java classes to be analyzed.
+	 * Returns the number of registered Java classes to be analyzed. The
+	 * registered directories are searched once; the count is that of the
+	 * classes analyzed by the following <code>analyze()</code>, or by the
+	 * preceding one if none follows.
 	 *
 	 * @return Number of classes.
 	 */
 	public int countClasses() {
-		return builder.countClasses();
+		if (inventory == null) {
+			inventory = builder.inventory();
+			inventoryAnalyzed = false;
+		}
+		return inventory.getClassCount();
 	}
 
 	/**
-	 * Indicates whether the packages contain one or more dependency cycles.
+	 * Indicates whether the packages contain one or more dependency cycles,
+	 * as found by <code>getPackageCycles()</code>.
 	 *
 	 * @return <code>true</code> if one or more dependency cycles exist.
 	 */
 	public boolean containsCycles() {
-		for (JavaPackage jPackage : getPackages()) {
-			if (jPackage.containsCycle()) {
-				return true;
+		return getPackageCycles().hasCycles();
+	}
+
+	/**
+	 * Builds a frozen, compact view of the dependency graph of the analyzed
+	 * packages, on which metrics and cycles may be computed without going
+	 * through the <code>JavaPackage</code> instances.
+	 *
+	 * @return Graph of the analyzed packages.
+	 */
+	public PackageGraph getPackageGraph() {
+		return new PackageGraph(getPackages());
+	}
+
+	/**
+	 * Computes the strongly connected components of the dependency graph of
+	 * the analyzed packages in a single pass. The components with more than
+	 * one package are the package dependency cycles.
+	 * <p>
+	 * The components are computed once and kept while the analyzed packages
+	 * and their efferents stay the same, so views asking about each package
+	 * share a single analysis. Couplings changed through the packages, such
+	 * as with <code>JavaPackage.dependsUpon()</code>, are noticed through a
+	 * fingerprint of the efferents of the analyzed packages; the returned
+	 * <code>PackageCycles</code> itself is a snapshot of the graph when it
+	 * was computed.
+	 * </p>
+	 *
+	 * @return Strongly connected components of the analyzed packages.
+	 */
+	public PackageCycles getPackageCycles() {
+		long fingerprint = fingerprint();
+		if (packageCycles == null || fingerprint != packageCyclesFingerprint) {
+			packageCycles = new PackageCycles(getPackages());
+			packageCyclesFingerprint = fingerprint;
+		}
+		return packageCycles;
+	}
+
+	/**
+	 * Hashes the names of the analyzed packages and of their efferents.
+	 */
+	private long fingerprint() {
+		long hash = packages.size();
+		for (JavaPackage pkg : packages.values()) {
+			hash = 31 * hash + pkg.getName().hashCode();
+			for (JavaPackage efferent : pkg.getEfferents()) {
+				hash = 31 * hash + efferent.getName().hashCode();
 			}
 		}
+		return hash;
+	}
 
-		return false;
+	/**
+	 * Rolls the analyzed packages up to every level of the package name
+	 * hierarchy, such as the top-level domains at depth 1 and the modules
+	 * below them at depth 2. The metrics and cycles of each level are
+	 * computed from the classes already analyzed, without parsing again.
+	 *
+	 * @return Roll-up of the analyzed packages.
+	 */
+	public PackageRollUp getRollUp() {
+		return new PackageRollUp(getPackages());
+	}
+
+	/**
+	 * Returns an enumerator of the elementary package dependency cycles of the
+	 * analyzed packages.
+	 *
+	 * @return Cycle enumerator.
+	 */
+	public CycleEnumerator getCycleEnumerator() {
+		return new CycleEnumerator(getPackageCycles());
 	}
 
 	/**
@@ -270,11 +642,18 @@ public class JDepend {
 	 * @return Added Java package.
 	 */
 	public JavaPackage addPackage(String name) {
+		JavaPackage pkg = addAnalyzedPackage(name);
+		registeredPackages.add(pkg.getName());
+		return pkg;
+	}
+
+	private JavaPackage addAnalyzedPackage(String name) {
 		name = toComponent(name);
 		JavaPackage pkg = packages.get(name);
 		if (pkg == null) {
-			pkg = new JavaPackage(name);
-			addPackage(pkg);
+			pkg = packageTable.intern(name);
+			packages.put(name, pkg);
+			packageCycles = null;
 		}
 
 		return pkg;
@@ -282,11 +661,10 @@ public class JDepend {
 
 	private String toComponent(String packageName) {
 		if (components != null) {
-			for (String component : components) {
-				if (packageName.startsWith(component + ".")) {
-					return component;
-				}
+			if (componentIndex == null) {
+				componentIndex = new ComponentIndex(components);
 			}
+			return componentIndex.toComponent(packageName);
 		}
 		return packageName;
 	}
@@ -306,14 +684,18 @@ public class JDepend {
 
 	/**
 	 * Adds the specified Java package to the collection of analyzed packages.
+	 * The package becomes the canonical package of its name unless a package
+	 * of that name is already known.
 	 *
 	 * @param pkg
 	 *            Java package.
 	 */
 	public void addPackage(JavaPackage pkg) {
-		if (!packages.containsValue(pkg)) {
-			packages.put(pkg.getName(), pkg);
+		if (!packages.containsKey(pkg.getName())) {
+			packages.put(pkg.getName(), packageTable.intern(pkg));
+			packageCycles = null;
 		}
+		registeredPackages.add(pkg.getName());
 	}
 
 	public PackageFilter getFilter() {
@@ -332,19 +714,101 @@ public class JDepend {
 	}
 
 	private void analyzeClass(JavaClass clazz) {
+		if (clazz.isModule()) {
+			modules.put(clazz.getModuleName(), clazz);
+			return;
+		}
+
 		String packageName = clazz.getPackageName();
 
 		if (!getFilter().accept(packageName)) {
 			return;
 		}
 
-		JavaPackage clazzPackage = addPackage(packageName);
-		clazzPackage.addClass(clazz);
+		JavaPackage clazzPackage = addAnalyzedPackage(packageName);
+		if (++reference(classReferences, clazz.getName())[0] == 1) {
+			clazzPackage.addClass(clazz);
+		}
 
+		List<JavaPackage> analyzed = new ArrayList<JavaPackage>();
+		analyzed.add(clazzPackage);
 		for (JavaPackage importedPackage : clazz.getImportedPackages()) {
-			importedPackage = addPackage(importedPackage.getName());
+			importedPackage = addAnalyzedPackage(importedPackage.getName());
 			clazzPackage.dependsUpon(importedPackage);
+			++reference(dependencies(clazzPackage), importedPackage)[0];
+			analyzed.add(importedPackage);
 		}
+		analyzedPackages.put(clazz, analyzed.toArray(new JavaPackage[analyzed.size()]));
+	}
+
+	/**
+	 * Undoes the analysis of the specified class, collecting the packages
+	 * which lost a class or a coupling. The class is removed from the
+	 * packages it was added to, even if the components or the filter
+	 * changed since.
+	 */
+	private void removeClass(JavaClass clazz, Set<JavaPackage> affected) {
+		if (clazz.isModule()) {
+			if (modules.get(clazz.getModuleName()) == clazz) {
+				modules.remove(clazz.getModuleName());
+			}
+			return;
+		}
+
+		JavaPackage[] analyzed = analyzedPackages.remove(clazz);
+		if (analyzed == null) {
+			return;
+		}
+
+		JavaPackage clazzPackage = analyzed[0];
+		if (--reference(classReferences, clazz.getName())[0] == 0) {
+			classReferences.remove(clazz.getName());
+			clazzPackage.removeClass(clazz);
+		}
+		affected.add(clazzPackage);
+
+		Map<JavaPackage, int[]> dependencies = dependencies(clazzPackage);
+		for (int i = 1; i < analyzed.length; i++) {
+			JavaPackage importedPackage = analyzed[i];
+			if (--reference(dependencies, importedPackage)[0] == 0) {
+				dependencies.remove(importedPackage);
+				clazzPackage.removeEfferent(importedPackage);
+				importedPackage.removeAfferent(clazzPackage);
+				affected.add(importedPackage);
+			}
+		}
+	}
+
+	/**
+	 * Drops the specified packages if they neither contain nor are referenced
+	 * by analyzed classes, unless they were explicitly added.
+	 */
+	private void prune(Set<JavaPackage> affected) {
+		for (JavaPackage pkg : affected) {
+			if (pkg.getClassCount() == 0 && pkg.afferentCoupling() == 0 && pkg.efferentCoupling() == 0
+					&& !registeredPackages.contains(pkg.getName())) {
+				packages.remove(pkg.getName());
+				dependencyReferences.remove(pkg);
+			}
+		}
+	}
+
+	private Map<JavaPackage, int[]> dependencies(JavaPackage pkg) {
+		Map<JavaPackage, int[]> dependencies = dependencyReferences.get(pkg);
+		if (dependencies == null) {
+			dependencies = new HashMap<JavaPackage, int[]>();
+			dependencyReferences.put(pkg, dependencies);
+		}
+		return dependencies;
+	}
+
+	private static <K> int[] reference(Map<K, int[]> references, K key) {
+		int[] count = references.get(key);
+		if (count == null) {
+			count = new int[1];
+			references.put(key, count);
+		}
+		return count;
 	}
 	
 	/**
@@ -363,4 +827,16 @@ public class JDepend {
 		}
 		return true;
 	}
+
+	/**
+	 * Checks all analyzed packages against the specified rules in one pass.
+	 *
+	 * @param rules
+	 *            Rules forbidding efferents.
+	 * @return Every forbidden efferent found; empty if the rules are
+	 *         fulfilled.
+	 */
+	public List<EfferentConstraints.Violation> findProhibitionRuleViolations(EfferentConstraints rules) {
+		return rules.validate(packages.values());
+	}
 }
@@ -1,8 +1,10 @@
 package jdepend.framework;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,6 +22,9 @@ public class JavaClass {
     private boolean isAbstract;
     private Map<String, JavaPackage> imports;
     private String sourceFile;
+    private String archive;
+    private String moduleName;
+    private List<String> requiredModules;
 
 
     public JavaClass(String name) {
@@ -28,6 +33,7 @@ public class JavaClass {
         isAbstract = false;
         imports = new HashMap<String, JavaPackage>();
         sourceFile = "Unknown";
+        requiredModules = new ArrayList<String>();
     }
 
     public void setName(String name) {
@@ -54,6 +60,55 @@ public class JavaClass {
         return sourceFile;
     }
 
+    /**
+     * Sets the archive from which the class was read: the path of a
+     * jar file, followed by <code>!/</code> and the entry name of each
+     * enclosing nested archive.
+     *
+     * @param archive Archive, or <code>null</code> for a class file.
+     */
+    public void setArchive(String archive) {
+        this.archive = archive;
+    }
+
+    public String getArchive() {
+        return archive;
+    }
+
+    /**
+     * Sets the name of the module declared by this class, which is then
+     * a module descriptor (<code>module-info</code>) rather than a
+     * class of a package.
+     *
+     * @param name Module name.
+     */
+    public void setModuleName(String name) {
+        moduleName = name;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    /**
+     * @return <code>true</code> if this class is a module descriptor.
+     */
+    public boolean isModule() {
+        return moduleName != null;
+    }
+
+    public void addRequiredModule(String name) {
+        requiredModules.add(name);
+    }
+
+    /**
+     * @return The modules required by this module descriptor, in the
+     *         order of the descriptor.
+     */
+    public Collection<String> getRequiredModules() {
+        return requiredModules;
+    }
+
     public Collection<JavaPackage> getImportedPackages() {
         return imports.values();
     }
@@ -1,15 +1,40 @@
 package jdepend.framework;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * The <code>JavaClassBuilder</code> builds <code>JavaClass</code>
- * instances from .class, .jar, .war, or .zip files.
+ * instances from .class, .jar, .war, .zip, or .jmod files, and from
+ * the modules of the runtime image.
+ * <p>
+ * Besides building all classes at once, the builder can run as a
+ * pipeline: the files found by the <code>FileManager</code> flow
+ * through a bounded queue to the parsing threads, and the parsed
+ * classes flow through another bounded queue to a
+ * <code>BuildListener</code>, while the directories are still being
+ * searched.
+ * </p>
  *
  * @author <b>Mike Clark</b>
  * @author Clarkware Consulting, Inc.
@@ -17,8 +42,13 @@ import java.util.zip.ZipEntry;
 
 public class JavaClassBuilder {
 
+    private static final int QUEUE_CAPACITY = 256;
+
     private AbstractParser parser;
     private FileManager fileManager;
+    private int threadCount;
+    private ParseCache parseCache;
+    private int archiveDepth;
 
 
     public JavaClassBuilder() {
@@ -32,19 +62,74 @@ public class JavaClassBuilder {
     public JavaClassBuilder(AbstractParser parser, FileManager fm) {
         this.parser = parser;
         this.fileManager = fm;
+        this.threadCount = 1;
     }
 
-    public int countClasses() {
-        AbstractParser counter = new AbstractParser() {
+    /**
+     * Sets the number of worker threads used to parse class files.
+     * With a single thread (the default) all files are parsed
+     * sequentially on the calling thread.
+     *
+     * @param threadCount Number of worker threads.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
 
-            public JavaClass parse(InputStream is) {
-                return new JavaClass("");
-            }
-        };
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets how deeply archives nested in jar, war, or zip files are
+     * analyzed, such as the jars in <code>WEB-INF/lib</code> of a war
+     * file. Nested archives are read from the enclosing archive's
+     * stream, without being extracted. With a depth of 0 (the default)
+     * nested archives are ignored; with a depth of 1 the archives in a
+     * jar file are analyzed, but not the archives in these.
+     *
+     * @param archiveDepth Nesting depth.
+     */
+    public void setArchiveDepth(int archiveDepth) {
+        if (archiveDepth < 0) {
+            throw new IllegalArgumentException("Invalid archive depth: " + archiveDepth);
+        }
+        this.archiveDepth = archiveDepth;
+    }
 
-        JavaClassBuilder builder = new JavaClassBuilder(counter, fileManager);
-        Collection<JavaClass> classes = builder.build();
-        return classes.size();
+    public int getArchiveDepth() {
+        return archiveDepth;
+    }
+
+    /**
+     * Sets the cache of previously parsed classes. Class files found
+     * in the cache are not parsed again; the parser's listeners are
+     * informed of them as if they were.
+     *
+     * @param parseCache Parse cache, or <code>null</code> for none.
+     */
+    public void setParseCache(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
+    /**
+     * Lists the class files of the file manager's directories.
+     *
+     * @return Class inventory.
+     */
+    public ClassInventory inventory() {
+        return new ClassInventory(fileManager.extractFiles(), fileManager);
+    }
+
+    public int countClasses() {
+        return inventory().getClassCount();
     }
 
     /**
@@ -55,9 +140,48 @@ public class JavaClassBuilder {
     public Collection<JavaClass> build() {
         Collection<JavaClass> classes = new ArrayList<JavaClass>();
 
-        for (File nextFile : fileManager.extractFiles()) {
+        for (Collection<JavaClass> fileClasses : build(inventory()).values()) {
+            classes.addAll(fileClasses);
+        }
+
+        return classes;
+    }
+
+    /**
+     * Builds the <code>JavaClass</code> instances from the specified
+     * class, jar, war, or zip files. Files which cannot be read are
+     * reported and left out of the result.
+     *
+     * @param files Class or Jar files.
+     * @return <code>JavaClass</code> instances of each file, in the
+     *         order of the files.
+     */
+    public Map<File, Collection<JavaClass>> build(Collection<File> files) {
+        return build(new ClassInventory(files, fileManager));
+    }
+
+    /**
+     * Builds the <code>JavaClass</code> instances from the class files
+     * listed by the specified inventory. Files which cannot be read are
+     * reported and left out of the result. Archive entries which cannot
+     * be parsed are reported and left out, the other entries of their
+     * archive being kept. The result does not depend upon the number of
+     * threads.
+     *
+     * @param inventory Class inventory.
+     * @return <code>JavaClass</code> instances of each file, in the
+     *         order of the inventory.
+     */
+    public Map<File, Collection<JavaClass>> build(ClassInventory inventory) {
+        if (threadCount > 1) {
+            return buildInParallel(inventory);
+        }
+
+        Map<File, Collection<JavaClass>> classes = new LinkedHashMap<File, Collection<JavaClass>>();
+
+        for (File nextFile : inventory.getFiles()) {
             try {
-                classes.addAll(buildClasses(nextFile));
+                classes.put(nextFile, buildClasses(inventory, nextFile));
             } catch (IOException ioe) {
                 System.err.println("\n" + ioe.getMessage());
             }
@@ -66,6 +190,126 @@ public class JavaClassBuilder {
         return classes;
     }
 
+    /**
+     * Builds the <code>JavaClass</code> instances of the file manager's
+     * directories as a pipeline, handing each class to the specified
+     * listener as soon as it is parsed. The directories are searched
+     * on one thread and the files are parsed on as many threads as set
+     * by <code>setThreadCount()</code>, so at most a bounded number of
+     * files and classes are pending at any time.
+     * <p>
+     * The listener is called on the calling thread, in the order in
+     * which the classes are parsed. Files which cannot be read are
+     * reported and skipped. If parsing fails otherwise, the build is
+     * stopped and the failure rethrown on the calling thread.
+     * </p>
+     *
+     * @param listener Build listener.
+     */
+    public void build(BuildListener listener) {
+        final BlockingQueue<File> files = new ArrayBlockingQueue<File>(QUEUE_CAPACITY);
+        final BlockingQueue<Built> built = new ArrayBlockingQueue<Built>(QUEUE_CAPACITY);
+        final ThreadLocal<AbstractParser> workerParser = new ThreadLocal<AbstractParser>() {
+            protected AbstractParser initialValue() {
+                return parser.newWorkerParser();
+            }
+        };
+        final File endOfFiles = new File("");
+        final Built endOfClasses = new Built(null, null, null);
+        final AtomicBoolean aborted = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount + 1);
+        List<Future<Void>> stages = new ArrayList<Future<Void>>();
+
+        try {
+            stages.add(executor.submit(new Callable<Void>() {
+                public Void call() throws InterruptedException {
+                    try {
+                        fileManager.discover(new SourceListener() {
+                            public void onSource(File file) {
+                                try {
+                                    files.put(file);
+                                } catch (InterruptedException ie) {
+                                    Thread.currentThread().interrupt();
+                                    throw new IllegalStateException(ie);
+                                }
+                            }
+                        });
+                    } finally {
+                        for (int i = 0; i < threadCount && !aborted.get(); i++) {
+                            files.put(endOfFiles);
+                        }
+                    }
+                    return null;
+                }
+            }));
+
+            for (int i = 0; i < threadCount; i++) {
+                stages.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws InterruptedException {
+                        // A failed worker hands its failure over in place
+                        // of its end marker, so the build stops at once
+                        // rather than waiting for files no one takes.
+                        Built end = endOfClasses;
+                        try {
+                            for (File file = files.take(); file != endOfFiles; file = files.take()) {
+                                try {
+                                    parseSource(workerParser.get(), file, built);
+                                } catch (IOException ioe) {
+                                    System.err.println("\n" + ioe.getMessage());
+                                }
+                            }
+                        } catch (RuntimeException re) {
+                            end = new Built(null, null, re);
+                            throw re;
+                        } catch (Error e) {
+                            end = new Built(null, null, e);
+                            throw e;
+                        } finally {
+                            if (!aborted.get()) {
+                                built.put(end);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            int running = threadCount;
+            while (running > 0) {
+                Built next = built.take();
+                if (next == endOfClasses) {
+                    running--;
+                } else if (next.failure != null) {
+                    throw new ExecutionException(next.failure);
+                } else {
+                    listener.onBuiltClass(next.source, next.jClass);
+                }
+            }
+
+            for (Future<Void> stage : stages) {
+                stage.get();
+            }
+
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Stages blocked on a full queue are interrupted, and
+            // do not wait to hand over their end markers.
+            aborted.set(true);
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Builds the <code>JavaClass</code> instances from the
      * specified file.
@@ -74,26 +318,24 @@ public class JavaClassBuilder {
      * @return Collection of <code>JavaClass</code> instances.
      */
     public Collection<JavaClass> buildClasses(File file) throws IOException {
-        if (fileManager.acceptClassFile(file)) {
-            InputStream is = null;
-            try {
-                is = new BufferedInputStream(new FileInputStream(file));
-                JavaClass parsedClass = parser.parse(is);
-                Collection<JavaClass> javaClasses = new ArrayList<JavaClass>();
-                javaClasses.add(parsedClass);
-                return javaClasses;
-            } finally {
-                if (is != null) {
-                    is.close();
-                }
-            }
+        if (fileManager.acceptClassFile(file) || (file.isFile() && fileManager.isModuleInfo(file.getName()))) {
+            JavaClass parsedClass = parse(parser, file);
+            Collection<JavaClass> javaClasses = new ArrayList<JavaClass>();
+            javaClasses.add(parsedClass);
+            return javaClasses;
         } else if (fileManager.acceptJarFile(file)) {
             JarFile jarFile = new JarFile(file);
             Collection<JavaClass> result = buildClasses(jarFile);
             jarFile.close();
             return result;
+        } else if (fileManager.isRuntimeModule(file)) {
+            Collection<JavaClass> javaClasses = new ArrayList<JavaClass>();
+            for (Path path : fileManager.extractEntries(file)) {
+                javaClasses.add(parse(parser, file, path));
+            }
+            return javaClasses;
         } else {
-            throw new IOException("File is not a valid " + ".class, .jar, .war, or .zip file: " + file.getPath());
+            throw new IOException("File is not a valid " + ".class, .jar, .war, .zip, or .jmod file: " + file.getPath());
         }
     }
 
@@ -107,23 +349,366 @@ public class JavaClassBuilder {
     public Collection<JavaClass> buildClasses(JarFile file) throws IOException {
         Collection<JavaClass> javaClasses = new ArrayList<JavaClass>();
 
-        Enumeration entries = file.entries();
-        while (entries.hasMoreElements()) {
-            ZipEntry e = (ZipEntry) entries.nextElement();
-            if (fileManager.acceptClassFileName(e.getName())) {
-                InputStream is = null;
+        for (ZipEntry e : fileManager.extractEntries(file)) {
+            javaClasses.addAll(parseEntry(parser, file, e));
+        }
+
+        return javaClasses;
+    }
+
+    private Collection<JavaClass> buildClasses(ClassInventory inventory, File file) throws IOException {
+        Collection<JavaClass> javaClasses = new ArrayList<JavaClass>(inventory.getClassCount(file));
+
+        if (fileManager.isRuntimeModule(file)) {
+            FileSystem image = fileManager.getRuntimeImage();
+            for (String name : inventory.getEntries(file)) {
+                try {
+                    javaClasses.add(parse(parser, file, image.getPath(name)));
+                } catch (IOException ioe) {
+                    System.err.println("\n" + ioe.getMessage());
+                }
+            }
+            return javaClasses;
+        }
+
+        if (!inventory.isJarFile(file)) {
+            javaClasses.add(parse(parser, file));
+            return javaClasses;
+        }
+
+        JarFile jarFile = new JarFile(file);
+        try {
+            for (String name : inventory.getEntries(file)) {
                 try {
-                    is = new BufferedInputStream(file.getInputStream(e));
-                    JavaClass jc = parser.parse(is);
-                    javaClasses.add(jc);
-                } finally {
-                    if (is != null) {
-                        is.close();
+                    javaClasses.addAll(parseEntry(parser, jarFile, entry(jarFile, name)));
+                } catch (IOException ioe) {
+                    System.err.println("\n" + ioe.getMessage());
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+
+        return javaClasses;
+    }
+
+    /**
+     * Parses the classes of the specified class or jar file into the
+     * specified queue. Entries which cannot be parsed are reported and
+     * skipped.
+     */
+    private void parseSource(AbstractParser worker, File file, BlockingQueue<Built> built)
+            throws IOException, InterruptedException {
+        if (fileManager.isRuntimeModule(file)) {
+            for (Path path : fileManager.extractEntries(file)) {
+                try {
+                    built.put(new Built(file, parse(worker, file, path), null));
+                } catch (IOException ioe) {
+                    System.err.println("\n" + ioe.getMessage());
+                }
+            }
+            return;
+        }
+
+        if (!fileManager.acceptJarFileName(file.getName())) {
+            built.put(new Built(file, parse(worker, file), null));
+            return;
+        }
+
+        JarFile jarFile = new JarFile(file);
+        try {
+            for (ZipEntry e : fileManager.extractEntries(jarFile)) {
+                Collection<JavaClass> entryClasses;
+                try {
+                    entryClasses = parseEntry(worker, jarFile, e);
+                } catch (IOException ioe) {
+                    System.err.println("\n" + ioe.getMessage());
+                    continue;
+                }
+                for (JavaClass jClass : entryClasses) {
+                    built.put(new Built(file, jClass, null));
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    /**
+     * Parses every class file and jar entry on a pool of worker threads.
+     * The results are collected in the order in which the sequential
+     * build would produce them, and entries which cannot be parsed are
+     * skipped alike, so both builds yield identical models.
+     */
+    private Map<File, Collection<JavaClass>> buildInParallel(ClassInventory inventory) {
+        final ThreadLocal<AbstractParser> workerParser = new ThreadLocal<AbstractParser>() {
+            protected AbstractParser initialValue() {
+                return parser.newWorkerParser();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<JarFile> jarFiles = new ArrayList<JarFile>();
+        Map<File, List<Future<Collection<JavaClass>>>> results =
+                new LinkedHashMap<File, List<Future<Collection<JavaClass>>>>();
+
+        try {
+            for (final File nextFile : inventory.getFiles()) {
+                List<Future<Collection<JavaClass>>> fileResults =
+                        new ArrayList<Future<Collection<JavaClass>>>(inventory.getEntries(nextFile).size() + 1);
+                if (fileManager.isRuntimeModule(nextFile)) {
+                    final FileSystem image;
+                    try {
+                        image = fileManager.getRuntimeImage();
+                    } catch (IOException ioe) {
+                        System.err.println("\n" + ioe.getMessage());
+                        continue;
                     }
+                    results.put(nextFile, fileResults);
+
+                    for (final String name : inventory.getEntries(nextFile)) {
+                        fileResults.add(executor.submit(new Callable<Collection<JavaClass>>() {
+                            public Collection<JavaClass> call() throws IOException {
+                                Path path = image.getPath(name);
+                                return Collections.singletonList(parse(workerParser.get(), nextFile, path));
+                            }
+                        }));
+                    }
+                } else if (!inventory.isJarFile(nextFile)) {
+                    results.put(nextFile, fileResults);
+                    fileResults.add(executor.submit(new Callable<Collection<JavaClass>>() {
+                        public Collection<JavaClass> call() throws IOException {
+                            return Collections.singletonList(parse(workerParser.get(), nextFile));
+                        }
+                    }));
+                } else {
+                    final JarFile jarFile;
+                    try {
+                        jarFile = new JarFile(nextFile);
+                    } catch (IOException ioe) {
+                        System.err.println("\n" + ioe.getMessage());
+                        continue;
+                    }
+                    jarFiles.add(jarFile);
+                    results.put(nextFile, fileResults);
+
+                    for (final String name : inventory.getEntries(nextFile)) {
+                        fileResults.add(executor.submit(new Callable<Collection<JavaClass>>() {
+                            public Collection<JavaClass> call() throws IOException {
+                                return parseEntry(workerParser.get(), jarFile, entry(jarFile, name));
+                            }
+                        }));
+                    }
+                }
+            }
+
+            Map<File, Collection<JavaClass>> classes = new LinkedHashMap<File, Collection<JavaClass>>();
+            for (Map.Entry<File, List<Future<Collection<JavaClass>>>> fileResults : results.entrySet()) {
+                File file = fileResults.getKey();
+                Collection<JavaClass> fileClasses = collect(fileResults.getValue());
+                // A class file which cannot be parsed is left out, as a
+                // file which cannot be read.
+                if (!fileClasses.isEmpty() || inventory.isJarFile(file) || fileManager.isRuntimeModule(file)) {
+                    classes.put(file, fileClasses);
+                }
+            }
+            return classes;
+
+        } finally {
+            executor.shutdownNow();
+            for (JarFile jarFile : jarFiles) {
+                try {
+                    jarFile.close();
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
                 }
             }
         }
+    }
 
+    /**
+     * Parses the specified jar entry: a class file, or an archive whose
+     * classes are parsed if nested archives are analyzed.
+     *
+     * @return Parsed classes, attributed to their archive.
+     */
+    private Collection<JavaClass> parseEntry(AbstractParser worker, JarFile file, ZipEntry e) throws IOException {
+        if (fileManager.acceptClassFileName(e.getName()) || fileManager.isModuleInfo(e.getName())) {
+            JavaClass jClass = parse(worker, file, e);
+            jClass.setArchive(file.getName());
+            return Collections.singletonList(jClass);
+        }
+
+        Collection<JavaClass> javaClasses = new ArrayList<JavaClass>();
+        if (archiveDepth > 0 && fileManager.acceptJarFileName(e.getName())) {
+            InputStream is = file.getInputStream(e);
+            try {
+                parseArchive(worker, is, file.getName() + "!/" + e.getName(), 1, javaClasses);
+            } finally {
+                is.close();
+            }
+        }
         return javaClasses;
     }
+
+    /**
+     * Parses the classes of a nested archive, and of the archives
+     * nested in it up to the archive depth, while reading the stream
+     * of the enclosing entry. As the stream is read once, only the
+     * base variants of the classes of a multi-release jar are parsed.
+     */
+    private void parseArchive(AbstractParser worker, InputStream is, String archive, int depth,
+            Collection<JavaClass> javaClasses) throws IOException {
+        ZipInputStream zip = new ZipInputStream(new FilterInputStream(is) {
+            public void close() {
+                // The enclosing stream is closed by its owner.
+            }
+        });
+        try {
+            ZipEntry e;
+            while ((e = zip.getNextEntry()) != null) {
+                if (fileManager.isVersioned(e.getName())) {
+                    continue;
+                }
+                if (fileManager.acceptClassFileName(e.getName()) || fileManager.isModuleInfo(e.getName())) {
+                    JavaClass jClass = parse(worker, AbstractParser.toBuffer(zip, e.getSize()), archive + "!/" + e.getName());
+                    jClass.setArchive(archive);
+                    javaClasses.add(jClass);
+                } else if (depth < archiveDepth && fileManager.acceptJarFileName(e.getName())) {
+                    parseArchive(worker, zip, archive + "!/" + e.getName(), depth + 1, javaClasses);
+                }
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private JavaClass parse(AbstractParser worker, File classFile) throws IOException {
+        String key = (parseCache != null) ? parseCache.key(classFile) : null;
+        JavaClass jClass = getCached(key);
+        if (jClass != null) {
+            return jClass;
+        }
+
+        if (worker != null) {
+            jClass = worker.parse(classFile);
+        } else {
+            synchronized (parser) {
+                jClass = parser.parse(classFile);
+            }
+        }
+        putCached(key, jClass);
+        return jClass;
+    }
+
+    private JavaClass parse(AbstractParser worker, JarFile file, ZipEntry e) throws IOException {
+        String key = (parseCache != null) ? parseCache.key(new File(file.getName()), e) : null;
+        JavaClass jClass = getCached(key);
+        if (jClass != null) {
+            return jClass;
+        }
+
+        jClass = parse(worker, readEntry(file, e), file.getName() + "!/" + e.getName());
+        putCached(key, jClass);
+        return jClass;
+    }
+
+    /**
+     * Parses the specified class file of a runtime module, attributing
+     * the class to the module.
+     */
+    private JavaClass parse(AbstractParser worker, File module, Path classFile) throws IOException {
+        String key = (parseCache != null) ? parseCache.key(classFile) : null;
+        JavaClass jClass = getCached(key);
+        if (jClass == null) {
+            jClass = parse(worker, ByteBuffer.wrap(Files.readAllBytes(classFile)), classFile.toUri().toString());
+            putCached(key, jClass);
+        }
+        jClass.setArchive(module.getPath());
+        return jClass;
+    }
+
+    private JavaClass parse(AbstractParser worker, ByteBuffer classFile, String name) throws IOException {
+        if (worker != null) {
+            return worker.parse(classFile, name);
+        }
+        synchronized (parser) {
+            return parser.parse(classFile, name);
+        }
+    }
+
+    private JavaClass getCached(String key) {
+        if (key == null) {
+            return null;
+        }
+        JavaClass jClass = parseCache.get(key, parser.getPackageTable());
+        if (jClass != null) {
+            parser.onParsedJavaClass(jClass);
+        }
+        return jClass;
+    }
+
+    private void putCached(String key, JavaClass jClass) {
+        if (key != null) {
+            parseCache.put(key, jClass);
+        }
+    }
+
+    private ZipEntry entry(JarFile file, String name) throws IOException {
+        ZipEntry e = file.getEntry(name);
+        if (e == null) {
+            throw new IOException("Missing entry " + name + " in " + file.getName());
+        }
+        return e;
+    }
+
+    /**
+     * Reads the specified jar entry into a heap buffer sized
+     * after the entry's uncompressed size.
+     */
+    private ByteBuffer readEntry(JarFile file, ZipEntry e) throws IOException {
+        InputStream is = file.getInputStream(e);
+        try {
+            return AbstractParser.toBuffer(is, e.getSize());
+        } finally {
+            is.close();
+        }
+    }
+
+    private Collection<JavaClass> collect(List<Future<Collection<JavaClass>>> results) {
+        Collection<JavaClass> classes = new ArrayList<JavaClass>(results.size());
+
+        for (Future<Collection<JavaClass>> result : results) {
+            try {
+                classes.addAll(result.get());
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof IOException) {
+                    System.err.println("\n" + cause.getMessage());
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IllegalStateException(cause);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return classes;
+    }
+
+    private static class Built {
+
+        final File source;
+        final JavaClass jClass;
+        final Throwable failure;
+
+        Built(File source, JavaClass jClass, Throwable failure) {
+            this.source = source;
+            this.jClass = jClass;
+            this.failure = failure;
+        }
+    }
 }
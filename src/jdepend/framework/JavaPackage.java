@@ -16,8 +16,9 @@ public class JavaPackage {
     private String name;
     private int volatility;
     private Set<JavaClass> classes;
-    private List<JavaPackage> afferents;
-    private List<JavaPackage> efferents;
+    private Set<JavaPackage> afferents;
+    private Set<JavaPackage> efferents;
+    private volatile PackageMatcher nameMatcher;
 
 
     public JavaPackage(String name) {
@@ -28,8 +29,8 @@ public class JavaPackage {
         this.name = name;
         setVolatility(volatility);
         classes = new HashSet<JavaClass>();
-        afferents = new ArrayList<JavaPackage>();
-        efferents = new ArrayList<JavaPackage>();
+        afferents = new LinkedHashSet<JavaPackage>();
+        efferents = new LinkedHashSet<JavaPackage>();
     }
 
     public String getName() {
@@ -50,37 +51,39 @@ public class JavaPackage {
         volatility = v;
     }
 
+    /**
+     * Indicates whether a package dependency cycle is reachable
+     * from this package.
+     * <p>
+     * Each call analyzes the graph reachable from this package anew.
+     * To ask about many packages, use the <code>PackageCycles</code>
+     * of <code>JDepend.getPackageCycles()</code>, which analyzes the
+     * graph once.
+     * </p>
+     *
+     * @return <code>true</code> if a cycle is reachable.
+     * @see PackageCycles
+     */
     public boolean containsCycle() {
-        return collectCycle(new ArrayList<JavaPackage>());
+        return new PackageCycles(Collections.singleton(this)).containsCycle(this);
     }
 
     /**
      * Collects the packages participating in the first package dependency cycle
      * detected which originates from this package.
+     * <p>
+     * Like <code>containsCycle()</code>, each call analyzes the graph
+     * reachable from this package anew.
+     * </p>
      *
      * @param list Collecting object to be populated with the list of
      *             JavaPackage instances in a cycle.
      * @return <code>true</code> if a cycle exist; <code>false</code>
      * otherwise.
+     * @see PackageCycles#collectCycle(JavaPackage, List)
      */
     public boolean collectCycle(List<JavaPackage> list) {
-
-        if (list.contains(this)) {
-            list.add(this);
-            return true;
-        }
-
-        list.add(this);
-
-        for (JavaPackage efferent : getEfferents()) {
-            if (efferent.collectCycle(list)) {
-                return true;
-            }
-        }
-
-        list.remove(this);
-
-        return false;
+        return new PackageCycles(Collections.singleton(this)).collectCycle(this, list);
     }
 
     /**
@@ -88,7 +91,8 @@ public class JavaPackage {
      * which originates from this package.
      * <p>
      * This is a more exhaustive search than that employed by
-     * <code>collectCycle</code>.
+     * <code>collectCycle</code>. Use <code>CycleEnumerator</code>
+     * to list the distinct cycles.
      * </p>
      *
      * @param list Collecting object to be populated with the list of
@@ -124,6 +128,15 @@ public class JavaPackage {
         classes.add(clazz);
     }
 
+    /**
+     * Removes the specified class from this package.
+     *
+     * @param clazz Java class.
+     */
+    public void removeClass(JavaClass clazz) {
+        classes.remove(clazz);
+    }
+
     public Collection<JavaClass> getClasses() {
         return classes;
     }
@@ -132,6 +145,25 @@ public class JavaPackage {
         return classes.size();
     }
 
+    /**
+     * Returns the archives from which the classes of this package were
+     * read, as given by <code>JavaClass.getArchive()</code>. A package
+     * split across nested jars lists each of them.
+     *
+     * @return Archives, in the order of the classes.
+     */
+    public Collection<String> getArchives() {
+        Set<String> archives = new LinkedHashSet<String>();
+
+        for (JavaClass clazz : classes) {
+            if (clazz.getArchive() != null) {
+                archives.add(clazz.getArchive());
+            }
+        }
+
+        return archives;
+    }
+
     public int getAbstractClassCount() {
         int count = 0;
 
@@ -176,34 +208,56 @@ public class JavaPackage {
      */
     public void addAfferent(JavaPackage jPackage) {
         if (!jPackage.getName().equals(getName())) {
-            if (!afferents.contains(jPackage)) {
-                afferents.add(jPackage);
-            }
+            afferents.add(jPackage);
         }
     }
 
+    /**
+     * Removes the specified Java package from the afferents of this package.
+     *
+     * @param jPackage Java package.
+     */
+    public void removeAfferent(JavaPackage jPackage) {
+        afferents.remove(jPackage);
+    }
+
+    /**
+     * @return The afferents of this package, in the order in which
+     * they were added.
+     */
     public Collection<JavaPackage> getAfferents() {
         return afferents;
     }
 
     public void setAfferents(Collection<JavaPackage> afferents) {
-        this.afferents = new ArrayList<JavaPackage>(afferents);
+        this.afferents = new LinkedHashSet<JavaPackage>(afferents);
     }
 
     public void addEfferent(JavaPackage jPackage) {
         if (!jPackage.getName().equals(getName())) {
-            if (!efferents.contains(jPackage)) {
-                efferents.add(jPackage);
-            }
+            efferents.add(jPackage);
         }
     }
 
+    /**
+     * Removes the specified Java package from the efferents of this package.
+     *
+     * @param jPackage Java package.
+     */
+    public void removeEfferent(JavaPackage jPackage) {
+        efferents.remove(jPackage);
+    }
+
+    /**
+     * @return The efferents of this package, in the order in which
+     * they were added.
+     */
     public Collection<JavaPackage> getEfferents() {
         return efferents;
     }
 
     public void setEfferents(Collection<JavaPackage> efferents) {
-        this.efferents = new ArrayList<JavaPackage>(efferents);
+        this.efferents = new LinkedHashSet<JavaPackage>(efferents);
     }
 
     /**
@@ -270,26 +324,75 @@ public class JavaPackage {
     }
     
     
-    boolean isAnyForbidenEfferentPresent(List<JavaPackage> efferentsForCheck) throws ForbidenEfferentException {
+	/**
+	 * Checks the efferents against the specified forbidden packages, whose
+	 * names may be patterns. The first forbidden package matching an
+	 * efferent is reported. The patterns are those kept by the forbidden
+	 * packages, so repeated checks do not compile them again.
+	 *
+	 * @param efferentsForCheck Forbidden packages.
+	 * @throws ForbidenEfferentException If an efferent is forbidden.
+	 */
+	boolean isAnyForbidenEfferentPresent(List<JavaPackage> efferentsForCheck) throws ForbidenEfferentException {
 		for (JavaPackage notSupportedJavaPackage : efferentsForCheck) {
-			if(isEfferentPresent(notSupportedJavaPackage)){
+			if (isEfferentPresent(notSupportedJavaPackage)) {
 				throw new ForbidenEfferentException(notSupportedJavaPackage.getName(), this.getName());
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Checks the efferents against the forbidden package patterns. The
+	 * first pattern matching an efferent is reported.
+	 *
+	 * @param forbidden Forbidden package patterns.
+	 * @throws ForbidenEfferentException If an efferent is forbidden.
+	 */
+	boolean isAnyForbidenEfferentPresent(PackageMatcher forbidden) throws ForbidenEfferentException {
+		int first = -1;
+		for (JavaPackage efferent : efferents) {
+			int index = forbidden.match(efferent.getName());
+			if (index >= 0 && (first < 0 || index < first)) {
+				first = index;
+			}
+		}
+		if (first >= 0) {
+			throw new ForbidenEfferentException(forbidden.getPattern(first), this.getName());
+		}
+		return false;
+	}
+
+	/**
+	 * Indicates whether an efferent of this package matches the specified
+	 * package, whose name may be a pattern as documented by
+	 * <code>PackageMatcher</code>.
+	 */
 	public boolean isEfferentPresent(JavaPackage notSupportedJavaPackage) throws ForbidenEfferentException {
 		if(efferents.contains(notSupportedJavaPackage)){
 			return true;
 		}
-		if(notSupportedJavaPackage.getName().endsWith("*")){
+		if(PackageMatcher.isPattern(notSupportedJavaPackage.getName())){
+			PackageMatcher matcher = notSupportedJavaPackage.getNameMatcher();
 			for (JavaPackage efferent : efferents) {
-				if(efferent.getName().contains(notSupportedJavaPackage.getName().substring(0, notSupportedJavaPackage.getName().length() - 1))){
+				if(matcher.matches(efferent.getName())){
 					return true;
 				}
 			}
 		}
 		return false;
 	}
+
+	/**
+	 * Returns the name of this package compiled as a package pattern. The
+	 * matcher is compiled on first use and kept with the package.
+	 */
+	PackageMatcher getNameMatcher() {
+		PackageMatcher matcher = nameMatcher;
+		if (matcher == null) {
+			matcher = new PackageMatcher(name);
+			nameMatcher = matcher;
+		}
+		return matcher;
+	}
 }
@@ -12,6 +12,7 @@ import java.util.*;
 public class JavaPackageWithEfferentRestriction extends JavaPackage {
 
     private List<JavaPackage> notSupportedEfferents;
+    private PackageMatcher notSupportedMatcher;
 
 	public JavaPackageWithEfferentRestriction(String name) {
         this(name, 1);
@@ -25,11 +26,29 @@ public class JavaPackageWithEfferentRestriction extends JavaPackage {
     List<JavaPackage> getNotSupportedEfferents() {
 		return notSupportedEfferents;
 	}
+
+    /**
+     * Returns the names of the forbidden efferents, compiled as package
+     * patterns: a plain name forbids one package, while a pattern such as
+     * <code>com.acme.*</code> or <code>com.acme.**.internal</code> forbids
+     * all packages matching it.
+     */
+    synchronized PackageMatcher getNotSupportedMatcher() {
+        if (notSupportedMatcher == null) {
+            List<String> patterns = new ArrayList<String>(notSupportedEfferents.size());
+            for (JavaPackage jPackage : notSupportedEfferents) {
+                patterns.add(jPackage.getName());
+            }
+            notSupportedMatcher = new PackageMatcher(patterns);
+        }
+        return notSupportedMatcher;
+    }
        
-    void addNotSupportedEfferent(JavaPackage jPackage) {
+    synchronized void addNotSupportedEfferent(JavaPackage jPackage) {
         if (!jPackage.getName().equals(getName())) {
             if (!notSupportedEfferents.contains(jPackage)) {
                 notSupportedEfferents.add(jPackage);
+                notSupportedMatcher = null;
             }
         }
     }
@@ -0,0 +1,247 @@
+package jdepend.framework;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The <code>PackageCycles</code> class computes the strongly
+ * connected components of a package dependency graph.
+ * <p>
+ * The graph consists of the specified packages and all packages
+ * reachable from them through their efferents. The components are
+ * found on a <code>PackageGraph</code> with an iterative version of
+ * Tarjan's algorithm, so the analysis takes time linear in the size
+ * of the graph and does not recurse, whatever the depth of the
+ * dependency chains.
+ * </p>
+ * <p>
+ * A component of more than one package is a package dependency
+ * cycle. Like <code>JavaPackage.containsCycle()</code>, a package
+ * is said to contain a cycle if a cycle is reachable from it.
+ * </p>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class PackageCycles {
+
+    private final JavaPackage[] nodes;
+    private final PackageGraph graph;
+    private final List<List<JavaPackage>> components;
+
+
+    /**
+     * Analyzes the graph of the specified packages.
+     *
+     * @param packages Packages.
+     */
+    public PackageCycles(Collection<JavaPackage> packages) {
+        nodes = PackageGraph.index(packages);
+        graph = new PackageGraph(nodes);
+
+        components = new ArrayList<List<JavaPackage>>(graph.getComponentCount());
+        for (int c = 0; c < graph.getComponentCount(); c++) {
+            int[] members = graph.getComponentMembers(c);
+            List<JavaPackage> component = new ArrayList<JavaPackage>(members.length);
+            for (int id : members) {
+                component.add(nodes[id]);
+            }
+            components.add(Collections.unmodifiableList(component));
+        }
+    }
+
+    /**
+     * Returns all strongly connected components, each listing its
+     * packages in discovery order. A component is listed after all
+     * components it depends upon.
+     *
+     * @return Components.
+     */
+    public List<List<JavaPackage>> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    /**
+     * Returns the components which are package dependency cycles,
+     * in the order of <code>getComponents()</code>.
+     *
+     * @return Cyclic components.
+     */
+    public List<List<JavaPackage>> getCycles() {
+        List<List<JavaPackage>> cycles = new ArrayList<List<JavaPackage>>();
+        for (int c = 0; c < components.size(); c++) {
+            if (graph.isCyclicComponent(c)) {
+                cycles.add(components.get(c));
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Returns the component containing the specified package.
+     *
+     * @param jPackage Package.
+     * @return Component, or <code>null</code> if the package is not
+     *         part of the analyzed graph.
+     */
+    public List<JavaPackage> getComponent(JavaPackage jPackage) {
+        int id = getNodeId(jPackage);
+        return (id >= 0) ? components.get(graph.getComponent(id)) : null;
+    }
+
+    /**
+     * Indicates whether the graph contains one or more package
+     * dependency cycles.
+     *
+     * @return <code>true</code> if a cycle exists.
+     */
+    public boolean hasCycles() {
+        return graph.hasCycles();
+    }
+
+    /**
+     * Indicates whether the specified package takes part in a
+     * package dependency cycle.
+     *
+     * @param jPackage Package.
+     * @return <code>true</code> if the package is in a cycle.
+     */
+    public boolean isInCycle(JavaPackage jPackage) {
+        int id = getNodeId(jPackage);
+        return (id >= 0) && graph.isInCycle(id);
+    }
+
+    /**
+     * Indicates whether a package dependency cycle is reachable
+     * from the specified package.
+     *
+     * @param jPackage Package.
+     * @return <code>true</code> if a cycle is reachable.
+     */
+    public boolean containsCycle(JavaPackage jPackage) {
+        int id = getNodeId(jPackage);
+        return (id >= 0) && graph.containsCycle(id);
+    }
+
+    /**
+     * Collects the packages of the first package dependency cycle
+     * found by a depth-first search from the specified package, as
+     * documented by <code>JavaPackage.collectCycle()</code>.
+     * <p>
+     * Only efferents from which a cycle (or a package already in the
+     * list) is reachable are followed, so the search visits each
+     * package at most once.
+     * </p>
+     *
+     * @param jPackage Package to start from.
+     * @param list Collecting object to be populated with the list of
+     *             JavaPackage instances in a cycle.
+     * @return <code>true</code> if a cycle exist; <code>false</code>
+     * otherwise.
+     */
+    public boolean collectCycle(JavaPackage jPackage, List<JavaPackage> list) {
+        if (list.contains(jPackage)) {
+            list.add(jPackage);
+            return true;
+        }
+
+        int current = getNodeId(jPackage);
+        if (current < 0) {
+            throw new IllegalArgumentException("Package not analyzed: " + jPackage);
+        }
+
+        boolean[] reaches = list.isEmpty() ? null : reaching(current, list);
+        if (!isLive(current, reaches)) {
+            return false;
+        }
+
+        Set<JavaPackage> path = new HashSet<JavaPackage>(list);
+        while (true) {
+            list.add(nodes[current]);
+            path.add(nodes[current]);
+
+            int next = -1;
+            for (int e = graph.efferentOffset(current); e < graph.efferentOffset(current + 1); e++) {
+                int target = graph.efferentTarget(e);
+                if (path.contains(nodes[target])) {
+                    list.add(nodes[target]);
+                    return true;
+                }
+                if (isLive(target, reaches)) {
+                    next = target;
+                    break;
+                }
+            }
+            current = next;
+        }
+    }
+
+    PackageGraph getGraph() {
+        return graph;
+    }
+
+    JavaPackage getNode(int id) {
+        return nodes[id];
+    }
+
+    int getNodeId(JavaPackage jPackage) {
+        int id = graph.getId(jPackage.getName());
+        return (id >= 0 && nodes[id].equals(jPackage)) ? id : -1;
+    }
+
+    /**
+     * Indicates whether either a cycle or one of the packages marked
+     * by <code>reaching()</code> is reachable from the specified package.
+     */
+    private boolean isLive(int id, boolean[] reaches) {
+        return graph.containsCycle(id) || (reaches != null && reaches[id]);
+    }
+
+    /**
+     * Marks the packages reachable from the start package from which
+     * one of the specified packages is reachable.
+     */
+    private boolean[] reaching(int start, List<JavaPackage> targets) {
+        int n = nodes.length;
+        int[] stack = new int[n];
+        int top = 0;
+        boolean[] seen = new boolean[n];
+        stack[top++] = start;
+        seen[start] = true;
+        while (top > 0) {
+            int v = stack[--top];
+            for (int e = graph.efferentOffset(v); e < graph.efferentOffset(v + 1); e++) {
+                int w = graph.efferentTarget(e);
+                if (!seen[w]) {
+                    seen[w] = true;
+                    stack[top++] = w;
+                }
+            }
+        }
+
+        Set<JavaPackage> targetSet = new HashSet<JavaPackage>(targets);
+        boolean[] reaches = new boolean[n];
+        top = 0;
+        for (int i = 0; i < n; i++) {
+            if (seen[i] && targetSet.contains(nodes[i])) {
+                reaches[i] = true;
+                stack[top++] = i;
+            }
+        }
+        while (top > 0) {
+            int w = stack[--top];
+            for (int v : graph.getAfferents(w)) {
+                if (seen[v] && !reaches[v]) {
+                    reaches[v] = true;
+                    stack[top++] = v;
+                }
+            }
+        }
+        return reaches;
+    }
+}
@@ -4,6 +4,9 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The <code>PackageFilter</code> class is used to filter imported
@@ -13,6 +16,19 @@ import java.util.Collection;
  * The filter executes all excluding/including entries in the order they are defined.
  * The first one that matches is used as the result of the filter.
  * If no entry matches, the Filter accepts a package.
+ * <p>
+ * A plain entry, or one ending with <code>*</code>, matches the package
+ * names starting with it. An entry with other wildcards, such as
+ * <code>com.acme.**.internal</code>, or a regular expression prefixed
+ * with <code>regex:</code>, matches whole package names, as documented
+ * by <code>PackageMatcher</code>.
+ * </p>
+ * <p>
+ * The entries are compiled into a <code>PackageMatcher</code> on first
+ * use, so a package name is matched against all entries in a single
+ * pass over its characters, whatever the number of entries. The result
+ * for each distinct package name is cached until another entry is added.
+ * </p>
  *
  * @author <b>Mike Clark</b>
  * @author Clarkware Consulting, Inc.
@@ -20,9 +36,13 @@ import java.util.Collection;
 
 public class PackageFilter {
     private final Collection<Filter> filters;
+    private volatile PackageMatcher matcher;
+    private volatile Filter[] compiled;
+    private final Map<String, Boolean> accepted;
 
     private PackageFilter(Collection<Filter> filters) {
         this.filters = filters;
+        this.accepted = new ConcurrentHashMap<String, Boolean>();
     }
 
     private PackageFilter() {
@@ -95,12 +115,33 @@ public class PackageFilter {
      * <code>false</code> otherwise.
      */
     public boolean accept(String packageName) {
-        for (Filter filter : filters) {
-            if (packageName.startsWith(filter.name)) {
-                return filter.include;
+        Boolean result = accepted.get(packageName);
+        if (result == null) {
+            result = Boolean.valueOf(match(packageName));
+            accepted.put(packageName, result);
+        }
+        return result.booleanValue();
+    }
+
+    private boolean match(String packageName) {
+        PackageMatcher m = matcher;
+        if (m == null) {
+            m = compile();
+        }
+        int index = m.match(packageName);
+        return (index < 0) ? true : compiled[index].include;
+    }
+
+    private synchronized PackageMatcher compile() {
+        if (matcher == null) {
+            List<String> patterns = new ArrayList<String>(filters.size());
+            for (Filter filter : filters) {
+                patterns.add(PackageMatcher.isPattern(filter.name) ? filter.name : filter.name + "*");
             }
+            compiled = filters.toArray(new Filter[filters.size()]);
+            matcher = new PackageMatcher(patterns);
         }
-        return true;
+        return matcher;
     }
 
     private PackageFilter add(Collection<String> packageNames, boolean include) {
@@ -112,9 +153,14 @@ public class PackageFilter {
 
     private PackageFilter add(String packageName, boolean include) {
         if (packageName.endsWith("*")) {
-            packageName = packageName.substring(0, packageName.length() - 1);
+            String prefix = packageName.substring(0, packageName.length() - 1);
+            if (!PackageMatcher.isPattern(prefix)) {
+                packageName = prefix;
+            }
         }
         filters.add(new Filter(packageName, include));
+        matcher = null;
+        accepted.clear();
         return this;
     }
 
@@ -0,0 +1,423 @@
+package jdepend.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The <code>PackageGraph</code> class is a frozen, compact view
+ * of a package dependency graph.
+ * <p>
+ * Packages are identified by integer ids, assigned in the order of
+ * the package names. The dependencies are held in primitive arrays
+ * in compressed sparse row form: the efferents of package
+ * <code>id</code> are the ids found between two offsets of a single
+ * array, in the order in which the package's efferents were added.
+ * The afferents are held the same way, derived from the efferents.
+ * </p>
+ * <p>
+ * The coupling metrics and the strongly connected components are
+ * computed on these arrays directly. Changes made to the packages
+ * after the graph was built are not reflected by the graph.
+ * </p>
+ * <p>
+ * Example use:
+ * </p>
+ * <blockquote>
+ *
+ * <pre>
+ * jdepend.analyze();
+ * PackageGraph graph = jdepend.getPackageGraph();
+ * for (int id = 0; id &lt; graph.size(); id++) {
+ *     String name = graph.getName(id);
+ *     float D = graph.distance(id);
+ *     boolean b = graph.containsCycle(id);
+ * }
+ * </pre>
+ *
+ * </blockquote>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class PackageGraph {
+
+    private final String[] names;
+    private final int[] classCounts;
+    private final int[] abstractClassCounts;
+    private final int[] volatilities;
+
+    private final int[] efferentOffsets;
+    private final int[] efferentTargets;
+    private final int[] afferentOffsets;
+    private final int[] afferentSources;
+
+    private final int[] component;
+    private final int[] componentOffsets;
+    private final int[] componentMembers;
+    private final boolean[] cyclic;
+    private final boolean[] reachesCycle;
+    private int componentCount;
+
+
+    /**
+     * Builds the graph of the specified packages and of all packages
+     * reachable from them through their efferents.
+     *
+     * @param packages Packages.
+     */
+    public PackageGraph(Collection<JavaPackage> packages) {
+        this(index(packages));
+    }
+
+    /**
+     * Builds the graph of the specified packages, which must be sorted
+     * by name and contain all their efferents.
+     */
+    PackageGraph(JavaPackage[] packages) {
+        int n = packages.length;
+        Map<JavaPackage, Integer> ids = new HashMap<JavaPackage, Integer>(n * 2);
+        for (int id = 0; id < n; id++) {
+            ids.put(packages[id], Integer.valueOf(id));
+        }
+
+        names = new String[n];
+        classCounts = new int[n];
+        abstractClassCounts = new int[n];
+        volatilities = new int[n];
+        efferentOffsets = new int[n + 1];
+
+        int edgeCount = 0;
+        for (int id = 0; id < n; id++) {
+            JavaPackage jPackage = packages[id];
+            names[id] = jPackage.getName();
+            classCounts[id] = jPackage.getClassCount();
+            abstractClassCounts[id] = jPackage.getAbstractClassCount();
+            volatilities[id] = jPackage.getVolatility();
+            edgeCount += jPackage.getEfferents().size();
+        }
+
+        efferentTargets = new int[edgeCount];
+        int[] afferentCounts = new int[n];
+        int edge = 0;
+        for (int id = 0; id < n; id++) {
+            efferentOffsets[id] = edge;
+            for (JavaPackage efferent : packages[id].getEfferents()) {
+                int target = ids.get(efferent).intValue();
+                efferentTargets[edge++] = target;
+                afferentCounts[target]++;
+            }
+        }
+        efferentOffsets[n] = edge;
+
+        afferentOffsets = new int[n + 1];
+        for (int id = 0; id < n; id++) {
+            afferentOffsets[id + 1] = afferentOffsets[id] + afferentCounts[id];
+        }
+        afferentSources = new int[edgeCount];
+        int[] next = Arrays.copyOf(afferentOffsets, n);
+        for (int id = 0; id < n; id++) {
+            for (int e = efferentOffsets[id]; e < efferentOffsets[id + 1]; e++) {
+                afferentSources[next[efferentTargets[e]]++] = id;
+            }
+        }
+
+        component = new int[n];
+        componentOffsets = new int[n + 1];
+        componentMembers = new int[n];
+        cyclic = new boolean[n];
+        reachesCycle = new boolean[n];
+        findComponents();
+    }
+
+    /**
+     * @return The number of packages.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the id of the package of the specified name.
+     *
+     * @param name Package name.
+     * @return Id, or -1 if the package is not part of the graph.
+     */
+    public int getId(String name) {
+        int id = Arrays.binarySearch(names, name);
+        return (id >= 0) ? id : -1;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return The ids of the efferents of the package.
+     */
+    public int[] getEfferents(int id) {
+        return Arrays.copyOfRange(efferentTargets, efferentOffsets[id], efferentOffsets[id + 1]);
+    }
+
+    /**
+     * @return The ids of the afferents of the package.
+     */
+    public int[] getAfferents(int id) {
+        return Arrays.copyOfRange(afferentSources, afferentOffsets[id], afferentOffsets[id + 1]);
+    }
+
+    public int getClassCount(int id) {
+        return classCounts[id];
+    }
+
+    public int getAbstractClassCount(int id) {
+        return abstractClassCounts[id];
+    }
+
+    public int getConcreteClassCount(int id) {
+        return classCounts[id] - abstractClassCounts[id];
+    }
+
+    public int getVolatility(int id) {
+        return volatilities[id];
+    }
+
+    /**
+     * @return The afferent coupling (Ca) of the package.
+     */
+    public int afferentCoupling(int id) {
+        return afferentOffsets[id + 1] - afferentOffsets[id];
+    }
+
+    /**
+     * @return The efferent coupling (Ce) of the package.
+     */
+    public int efferentCoupling(int id) {
+        return efferentOffsets[id + 1] - efferentOffsets[id];
+    }
+
+    /**
+     * @return Instability (0-1) of the package.
+     */
+    public float instability(int id) {
+        float totalCoupling = (float) efferentCoupling(id) + (float) afferentCoupling(id);
+
+        if (totalCoupling > 0) {
+            return efferentCoupling(id) / totalCoupling;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return The abstractness (0-1) of the package.
+     */
+    public float abstractness(int id) {
+        if (classCounts[id] > 0) {
+            return (float) abstractClassCounts[id] / (float) classCounts[id];
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return The distance from the main sequence (D) of the package.
+     */
+    public float distance(int id) {
+        float d = Math.abs(abstractness(id) + instability(id) - 1);
+        return d * volatilities[id];
+    }
+
+    /**
+     * Returns the number of strongly connected components. Components
+     * are numbered so that a component only depends upon components
+     * of lower numbers.
+     *
+     * @return Number of components.
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return The component of the package.
+     */
+    public int getComponent(int id) {
+        return component[id];
+    }
+
+    /**
+     * @return The ids of the packages of the component, in the order
+     * in which they were discovered.
+     */
+    public int[] getComponentMembers(int c) {
+        return Arrays.copyOfRange(componentMembers, componentOffsets[c], componentOffsets[c + 1]);
+    }
+
+    /**
+     * @return <code>true</code> if the package is in a cycle.
+     */
+    public boolean isInCycle(int id) {
+        return cyclic[component[id]];
+    }
+
+    /**
+     * @return <code>true</code> if a cycle is reachable from the package.
+     */
+    public boolean containsCycle(int id) {
+        return reachesCycle[component[id]];
+    }
+
+    /**
+     * @return <code>true</code> if the graph contains a cycle.
+     */
+    public boolean hasCycles() {
+        for (int c = 0; c < componentCount; c++) {
+            if (cyclic[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int efferentOffset(int id) {
+        return efferentOffsets[id];
+    }
+
+    int efferentTarget(int edge) {
+        return efferentTargets[edge];
+    }
+
+    boolean isCyclicComponent(int c) {
+        return cyclic[c];
+    }
+
+    /**
+     * Returns the specified packages and all packages reachable from
+     * them, sorted by name.
+     */
+    static JavaPackage[] index(Collection<JavaPackage> packages) {
+        Set<JavaPackage> seen = new HashSet<JavaPackage>();
+        List<JavaPackage> all = new ArrayList<JavaPackage>();
+        List<JavaPackage> pending = new ArrayList<JavaPackage>();
+
+        for (JavaPackage root : packages) {
+            if (seen.add(root)) {
+                all.add(root);
+                pending.add(root);
+            }
+            while (!pending.isEmpty()) {
+                JavaPackage next = pending.remove(pending.size() - 1);
+                for (JavaPackage efferent : next.getEfferents()) {
+                    if (seen.add(efferent)) {
+                        all.add(efferent);
+                        pending.add(efferent);
+                    }
+                }
+            }
+        }
+
+        Collections.sort(all, new PackageComparator(PackageComparator.byName()));
+        return all.toArray(new JavaPackage[all.size()]);
+    }
+
+    private void findComponents() {
+        int n = names.length;
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackTop = 0;
+        int[] callStack = new int[n];
+        int[] edgePosition = new int[n];
+        int nextIndex = 1;
+        int members = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != 0) {
+                continue;
+            }
+
+            int depth = 0;
+            callStack[depth] = root;
+            edgePosition[root] = efferentOffsets[root];
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackTop++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callStack[depth];
+
+                if (edgePosition[v] < efferentOffsets[v + 1]) {
+                    int w = efferentTargets[edgePosition[v]++];
+                    if (index[w] == 0) {
+                        index[w] = lowLink[w] = nextIndex++;
+                        stack[stackTop++] = w;
+                        onStack[w] = true;
+                        edgePosition[w] = efferentOffsets[w];
+                        callStack[++depth] = w;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+
+                if (lowLink[v] == index[v]) {
+                    int c = componentCount++;
+                    componentOffsets[c] = members;
+                    int w;
+                    do {
+                        w = stack[--stackTop];
+                        onStack[w] = false;
+                        component[w] = c;
+                        componentMembers[members++] = w;
+                    } while (w != v);
+                    reverse(componentMembers, componentOffsets[c], members);
+                    componentOffsets[c + 1] = members;
+
+                    cyclic[c] = members - componentOffsets[c] > 1;
+                    reachesCycle[c] = cyclic[c] || reachesCycleThrough(c);
+                }
+
+                depth--;
+                if (depth >= 0) {
+                    int parent = callStack[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a member of the specified, just completed
+     * component depends upon a component from which a cycle is
+     * reachable. Such components are always completed before.
+     */
+    private boolean reachesCycleThrough(int c) {
+        for (int m = componentOffsets[c]; m < componentOffsets[c + 1]; m++) {
+            int v = componentMembers[m];
+            for (int e = efferentOffsets[v]; e < efferentOffsets[v + 1]; e++) {
+                int w = efferentTargets[e];
+                if (component[w] != c && reachesCycle[component[w]]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void reverse(int[] a, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package jdepend.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The <code>PackageMatcher</code> class matches package names against
+ * an ordered list of package patterns, and tells the first pattern
+ * matching a name.
+ * <p>
+ * A pattern is either a glob or, when prefixed with
+ * <code>regex:</code>, a regular expression matching the whole name.
+ * In a glob:
+ * </p>
+ * <ul>
+ * <li><code>*</code> matches any characters within a segment, as in
+ * <code>com.acme.*.internal</code>;</li>
+ * <li><code>**</code> matches any number of whole segments, including
+ * none, as in <code>com.acme.**.internal</code>;</li>
+ * <li>a <code>*</code> ending the pattern matches any remainder of the
+ * name, as in <code>java.*</code>, which matches
+ * <code>java.util.concurrent</code>.</li>
+ * </ul>
+ * <p>
+ * The globs are compiled together into one automaton, which is made
+ * deterministic as names are matched, so a name is matched against
+ * all globs in a single pass over its characters, however many there
+ * are. The result for each distinct name is kept. Regular expressions
+ * are matched one by one, and only when no earlier glob matches.
+ * </p>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class PackageMatcher {
+
+    /**
+     * Prefix of the patterns which are regular expressions.
+     */
+    public static final String REGEX = "regex:";
+
+    private static final int CHAR = 0;
+    private static final int SEGMENT = 1;
+    private static final int ANY = 2;
+    private static final int NONE = Integer.MAX_VALUE;
+    private static final int MAX_STATES = 4096;
+
+    private final String[] patterns;
+    private final Pattern[] regexes;
+    private final List<List<Edge>> edges;
+    private final List<Integer> accepts;
+
+    private final Map<String, State> states;
+    private State start;
+    private final Map<String, Integer> matches;
+    private final Map<String, Integer> roots;
+    private final Map<String, int[]> allMatches;
+
+
+    /**
+     * Compiles the specified patterns.
+     *
+     * @param patterns Globs or regular expressions, in order.
+     * @throws IllegalArgumentException If a regular expression is invalid.
+     */
+    public PackageMatcher(Collection<String> patterns) {
+        this.patterns = patterns.toArray(new String[patterns.size()]);
+        this.regexes = new Pattern[this.patterns.length];
+        this.edges = new ArrayList<List<Edge>>();
+        this.accepts = new ArrayList<Integer>();
+        this.states = new HashMap<String, State>();
+        this.matches = new ConcurrentHashMap<String, Integer>();
+        this.roots = new ConcurrentHashMap<String, Integer>();
+        this.allMatches = new ConcurrentHashMap<String, int[]>();
+
+        int[] initial = new int[this.patterns.length];
+        int globs = 0;
+        for (int i = 0; i < this.patterns.length; i++) {
+            String pattern = this.patterns[i];
+            if (pattern.startsWith(REGEX)) {
+                try {
+                    regexes[i] = Pattern.compile(pattern.substring(REGEX.length()));
+                } catch (PatternSyntaxException pse) {
+                    throw new IllegalArgumentException("Invalid package pattern: " + pattern, pse);
+                }
+            } else {
+                initial[globs++] = compile(pattern, i);
+            }
+        }
+        this.start = intern(Arrays.copyOf(initial, globs));
+    }
+
+    public PackageMatcher(String... patterns) {
+        this(Arrays.asList(patterns));
+    }
+
+    /**
+     * Indicates whether the specified name is a glob with wildcards
+     * or a regular expression, rather than a plain package name.
+     *
+     * @param name Package name or pattern.
+     * @return <code>true</code> for a pattern.
+     */
+    public static boolean isPattern(String name) {
+        return name.indexOf('*') >= 0 || name.startsWith(REGEX);
+    }
+
+    /**
+     * @return The number of patterns.
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Returns the pattern at the specified index.
+     *
+     * @param index Pattern index.
+     * @return Pattern.
+     */
+    public String getPattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * Indicates whether any pattern matches the specified package name.
+     *
+     * @param packageName Package name.
+     * @return <code>true</code> if a pattern matches.
+     */
+    public boolean matches(String packageName) {
+        return match(packageName) >= 0;
+    }
+
+    /**
+     * Returns the first pattern matching the specified package name.
+     *
+     * @param packageName Package name.
+     * @return Index of the first matching pattern, or -1 if none
+     *         matches.
+     */
+    public int match(String packageName) {
+        Integer index = matches.get(packageName);
+        if (index == null) {
+            index = Integer.valueOf(run(packageName, false));
+            matches.put(packageName, index);
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Returns all patterns matching the specified package name.
+     *
+     * @param packageName Package name.
+     * @return Indexes of the matching patterns, in ascending order.
+     */
+    public int[] matchAll(String packageName) {
+        int[] indexes = allMatches.get(packageName);
+        if (indexes == null) {
+            int[] globs;
+            synchronized (this) {
+                globs = finalState(packageName).accepted;
+            }
+            indexes = new int[globs.length + regexes.length];
+            int count = 0;
+            int g = 0;
+            for (int k = 0; k < patterns.length; k++) {
+                if (g < globs.length && globs[g] == k) {
+                    indexes[count++] = k;
+                    g++;
+                } else if (regexes[k] != null && regexes[k].matcher(packageName).matches()) {
+                    indexes[count++] = k;
+                }
+            }
+            indexes = Arrays.copyOf(indexes, count);
+            allMatches.put(packageName, indexes);
+        }
+        return indexes.clone();
+    }
+
+    /**
+     * Returns the length of the enclosing package of the specified
+     * package name matched by the first pattern, such as the length of
+     * <code>com.acme</code> for <code>com.acme.util</code> and the
+     * pattern <code>com.acme</code>. Of the enclosing packages matched
+     * by the first pattern, the shortest is chosen. The package itself
+     * is not considered.
+     *
+     * @param packageName Package name.
+     * @return Length of the enclosing package, or -1 if no pattern
+     *         matches an enclosing package.
+     */
+    public int matchRoot(String packageName) {
+        Integer length = roots.get(packageName);
+        if (length == null) {
+            length = Integer.valueOf(run(packageName, true));
+            roots.put(packageName, length);
+        }
+        return length.intValue();
+    }
+
+    /**
+     * Runs the automaton over the name, then tries the regular
+     * expressions which come before the first matching glob.
+     *
+     * @return First matching pattern, or the length of the enclosing
+     *         package matched by the first pattern.
+     */
+    private int run(String name, boolean root) {
+        int first = NONE;
+        int length = -1;
+
+        synchronized (this) {
+            if (!root) {
+                first = finalState(name).accept;
+            } else {
+                State state = start;
+                for (int i = 0; i < name.length() && state.nfaStates.length > 0; i++) {
+                    char c = name.charAt(i);
+                    if (c == '.' && state.accept < first) {
+                        first = state.accept;
+                        length = i;
+                    }
+                    state = next(state, c);
+                }
+            }
+        }
+
+        for (int k = 0; k < Math.min(first, regexes.length); k++) {
+            if (regexes[k] == null) {
+                continue;
+            }
+            if (!root) {
+                if (regexes[k].matcher(name).matches()) {
+                    return k;
+                }
+                continue;
+            }
+            for (int i = name.indexOf('.'); i > 0; i = name.indexOf('.', i + 1)) {
+                if (regexes[k].matcher(name.subSequence(0, i)).matches()) {
+                    return i;
+                }
+            }
+        }
+
+        if (root) {
+            return length;
+        }
+        return (first == NONE) ? -1 : first;
+    }
+
+    private State finalState(String name) {
+        State state = start;
+        for (int i = 0; i < name.length() && state.nfaStates.length > 0; i++) {
+            state = next(state, name.charAt(i));
+        }
+        return state;
+    }
+
+    private State next(State state, char c) {
+        Character key = Character.valueOf(c);
+        State next = state.next.get(key);
+        if (next != null) {
+            return next;
+        }
+
+        int[] targets = new int[8];
+        int count = 0;
+        for (int s : state.nfaStates) {
+            for (Edge e : edges.get(s)) {
+                if (e.accepts(c)) {
+                    if (count == targets.length) {
+                        targets = Arrays.copyOf(targets, count * 2);
+                    }
+                    targets[count++] = e.target;
+                }
+            }
+        }
+
+        if (states.size() >= MAX_STATES) {
+            // Keep the deterministic automaton bounded; states are
+            // built again as names require them.
+            states.clear();
+            start = intern(start.nfaStates);
+        }
+        next = intern(distinct(targets, count));
+        state.next.put(key, next);
+        return next;
+    }
+
+    private State intern(int[] nfaStates) {
+        String key = Arrays.toString(nfaStates);
+        State state = states.get(key);
+        if (state == null) {
+            state = new State(nfaStates);
+            int[] accepted = new int[nfaStates.length];
+            int count = 0;
+            for (int s : nfaStates) {
+                int index = accepts.get(s).intValue();
+                if (index != NONE) {
+                    accepted[count++] = index;
+                }
+            }
+            state.accepted = distinct(accepted, count);
+            state.accept = (state.accepted.length > 0) ? state.accepted[0] : NONE;
+            states.put(key, state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the distinct values among the first values of an array,
+     * in ascending order.
+     */
+    private static int[] distinct(int[] values, int count) {
+        int[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int length = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[length++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, length);
+    }
+
+    /**
+     * Adds the states of a glob.
+     *
+     * @return Initial state of the glob.
+     */
+    private int compile(String glob, int index) {
+        String[] segments = glob.split("\\.", -1);
+        int last = segments.length - 1;
+        int initial = newState();
+        int current = initial;
+        boolean separated = true;
+
+        for (int i = 0; i <= last; i++) {
+            String segment = segments[i];
+
+            if (segment.equals("**")) {
+                if (i == 0 && i == last) {
+                    addEdge(current, ANY, current);
+                } else if (i == last) {
+                    // The enclosing package, or any package in it.
+                    accept(current, index);
+                    int inner = newState();
+                    addEdge(current, '.', inner);
+                    addEdge(inner, ANY, inner);
+                    current = inner;
+                } else {
+                    // Any number of segments, each followed by a dot.
+                    int loop = current;
+                    if (i > 0) {
+                        loop = newState();
+                        addEdge(current, '.', loop);
+                    }
+                    int inSegment = newState();
+                    addEdge(loop, SEGMENT, inSegment);
+                    addEdge(inSegment, SEGMENT, inSegment);
+                    addEdge(inSegment, '.', loop);
+                    current = loop;
+                    separated = false;
+                }
+                continue;
+            }
+
+            if (i > 0 && separated) {
+                int next = newState();
+                addEdge(current, '.', next);
+                current = next;
+            }
+            separated = true;
+
+            for (int j = 0; j < segment.length(); j++) {
+                char c = segment.charAt(j);
+                if (c == '*') {
+                    addEdge(current, (i == last && j == segment.length() - 1) ? ANY : SEGMENT, current);
+                } else {
+                    int next = newState();
+                    addEdge(current, c, next);
+                    current = next;
+                }
+            }
+        }
+
+        accept(current, index);
+        return initial;
+    }
+
+    private int newState() {
+        edges.add(new ArrayList<Edge>(1));
+        accepts.add(Integer.valueOf(NONE));
+        return edges.size() - 1;
+    }
+
+    private void addEdge(int from, int kind, int to) {
+        edges.get(from).add(new Edge(kind, '\0', to));
+    }
+
+    private void addEdge(int from, char c, int to) {
+        edges.get(from).add(new Edge(CHAR, c, to));
+    }
+
+    private void accept(int state, int index) {
+        if (index < accepts.get(state).intValue()) {
+            accepts.set(state, Integer.valueOf(index));
+        }
+    }
+
+    /**
+     * A transition of the nondeterministic automaton.
+     */
+    private static class Edge {
+
+        final int kind;
+        final char c;
+        final int target;
+
+        Edge(int kind, char c, int target) {
+            this.kind = kind;
+            this.c = c;
+            this.target = target;
+        }
+
+        boolean accepts(char input) {
+            switch (kind) {
+            case CHAR:
+                return input == c;
+            case SEGMENT:
+                return input != '.';
+            default:
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A state of the deterministic automaton: a set of states of the
+     * nondeterministic one, and the patterns they accept.
+     */
+    private static class State {
+
+        final int[] nfaStates;
+        final Map<Character, State> next;
+        int accept;
+        int[] accepted;
+
+        State(int[] nfaStates) {
+            this.nfaStates = nfaStates;
+            this.next = new HashMap<Character, State>();
+            this.accept = NONE;
+        }
+    }
+}
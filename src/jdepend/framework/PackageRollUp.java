@@ -0,0 +1,203 @@
+package jdepend.framework;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The <code>PackageRollUp</code> class rolls the analyzed packages up
+ * to the levels of the package name hierarchy.
+ * <p>
+ * At depth <i>n</i>, each package is merged into the package named by
+ * the first <i>n</i> segments of its name: at depth 2,
+ * <code>com.acme.billing.tax</code> and <code>com.acme.util</code> are
+ * both merged into <code>com.acme</code>. A merged package holds the
+ * classes of its members and depends upon the merged packages of
+ * their efferents, so its metrics (Ca, Ce, A, I and D) and cycles are
+ * those of the level, computed from the classes already analyzed.
+ * Packages with fewer segments are kept as they are.
+ * </p>
+ * <p>
+ * Example use:
+ * </p>
+ * <blockquote>
+ *
+ * <pre>
+ * PackageRollUp rollUp = jdepend.getRollUp();
+ * for (int depth = 1; depth &lt;= rollUp.getDepth(); depth++) {
+ *     for (JavaPackage p : rollUp.getPackages(depth)) {
+ *         System.out.println(depth + " " + p.getName() + " " + p.distance());
+ *     }
+ * }
+ * </pre>
+ *
+ * </blockquote>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class PackageRollUp {
+
+    private final Collection<JavaPackage> packages;
+    private final int depth;
+    private final Map<Integer, Map<String, JavaPackage>> levels;
+    private final Map<Integer, PackageCycles> cycles;
+
+
+    /**
+     * Rolls up the specified packages.
+     *
+     * @param packages Analyzed packages and the packages they reference.
+     */
+    public PackageRollUp(Collection<JavaPackage> packages) {
+        this.packages = packages;
+        this.levels = new HashMap<Integer, Map<String, JavaPackage>>();
+        this.cycles = new HashMap<Integer, PackageCycles>();
+
+        int max = 0;
+        for (JavaPackage jPackage : packages) {
+            max = Math.max(max, segments(jPackage.getName()));
+        }
+        this.depth = max;
+    }
+
+    /**
+     * @return The number of segments of the longest package name, the
+     *         depth at which the packages are not merged.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the packages of the specified level.
+     *
+     * @param depth Number of package name segments, at least 1.
+     * @return Merged packages, in the order of their first member.
+     */
+    public Collection<JavaPackage> getPackages(int depth) {
+        return Collections.unmodifiableCollection(getLevel(depth).values());
+    }
+
+    /**
+     * Returns the package of the specified level with the specified name.
+     *
+     * @param depth Number of package name segments, at least 1.
+     * @param name Merged package name.
+     * @return Merged package, or <code>null</code> if not found.
+     */
+    public JavaPackage getPackage(int depth, String name) {
+        return getLevel(depth).get(name);
+    }
+
+    /**
+     * Computes the strongly connected components of the packages of the
+     * specified level. Packages which take part in no cycle may take
+     * part in one once merged, such as <code>a.x</code> depending upon
+     * <code>b.y</code> and <code>b.z</code> depending upon
+     * <code>a.w</code> at depth 1.
+     *
+     * @param depth Number of package name segments, at least 1.
+     * @return Strongly connected components of the level.
+     */
+    public PackageCycles getPackageCycles(int depth) {
+        Integer key = Integer.valueOf(depth);
+        PackageCycles levelCycles = cycles.get(key);
+        if (levelCycles == null) {
+            levelCycles = new PackageCycles(getPackages(depth));
+            cycles.put(key, levelCycles);
+        }
+        return levelCycles;
+    }
+
+    /**
+     * Returns the name of the package of the specified level into which
+     * the specified package is merged.
+     *
+     * @param packageName Package name.
+     * @param depth Number of package name segments, at least 1.
+     * @return Leading segments of the package name.
+     */
+    public static String toLevel(String packageName, int depth) {
+        int end = -1;
+        for (int i = 0; i < depth; i++) {
+            end = packageName.indexOf('.', end + 1);
+            if (end < 0) {
+                return packageName;
+            }
+        }
+        return packageName.substring(0, end);
+    }
+
+    private Map<String, JavaPackage> getLevel(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Invalid depth: " + depth);
+        }
+
+        Integer key = Integer.valueOf(depth);
+        Map<String, JavaPackage> level = levels.get(key);
+        if (level == null) {
+            level = rollUp(depth);
+            levels.put(key, level);
+        }
+        return level;
+    }
+
+    private Map<String, JavaPackage> rollUp(int depth) {
+        Map<String, JavaPackage> level = new LinkedHashMap<String, JavaPackage>();
+        Map<String, JavaPackage> merged = new HashMap<String, JavaPackage>();
+
+        for (JavaPackage jPackage : packages) {
+            JavaPackage mergedPackage = merge(level, jPackage, depth);
+            merged.put(jPackage.getName(), mergedPackage);
+            for (JavaClass jClass : jPackage.getClasses()) {
+                mergedPackage.addClass(jClass);
+            }
+        }
+
+        for (JavaPackage jPackage : packages) {
+            JavaPackage mergedPackage = merged.get(jPackage.getName());
+            for (JavaPackage efferent : jPackage.getEfferents()) {
+                JavaPackage mergedEfferent = merged.get(efferent.getName());
+                if (mergedEfferent == null) {
+                    // An efferent which is not among the rolled up
+                    // packages is merged without its classes.
+                    mergedEfferent = merge(level, efferent, depth);
+                    merged.put(efferent.getName(), mergedEfferent);
+                }
+                if (mergedEfferent != mergedPackage) {
+                    mergedPackage.dependsUpon(mergedEfferent);
+                }
+            }
+        }
+
+        return level;
+    }
+
+    /**
+     * Returns the package of the level into which the specified package
+     * is merged. A merged package is volatile if any member is.
+     */
+    private JavaPackage merge(Map<String, JavaPackage> level, JavaPackage jPackage, int depth) {
+        String name = toLevel(jPackage.getName(), depth);
+        JavaPackage mergedPackage = level.get(name);
+        if (mergedPackage == null) {
+            mergedPackage = new JavaPackage(name, jPackage.getVolatility());
+            level.put(name, mergedPackage);
+        } else if (jPackage.getVolatility() > mergedPackage.getVolatility()) {
+            mergedPackage.setVolatility(jPackage.getVolatility());
+        }
+        return mergedPackage;
+    }
+
+    private static int segments(String packageName) {
+        int count = 1;
+        for (int i = packageName.indexOf('.'); i >= 0; i = packageName.indexOf('.', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,124 @@
+package jdepend.framework;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The <code>PackageTable</code> class is the symbol table of
+ * the packages known to an analysis. It maps each package name
+ * to a single canonical <code>JavaPackage</code> instance and
+ * to a dense integer id, so that the parser, the parsed classes
+ * and the <code>JDepend</code> model all share one instance per
+ * package.
+ * <p>
+ * Lookups are lock-free; the table may be shared by parsers
+ * running on several threads.
+ * </p>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class PackageTable {
+
+    private final ConcurrentMap<String, JavaPackage> packages;
+    private final ConcurrentMap<String, Integer> ids;
+    private final List<JavaPackage> byId;
+
+
+    public PackageTable() {
+        packages = new ConcurrentHashMap<String, JavaPackage>();
+        ids = new ConcurrentHashMap<String, Integer>();
+        byId = new ArrayList<JavaPackage>();
+    }
+
+    /**
+     * Returns the canonical package of the specified name,
+     * creating and registering it on first use.
+     *
+     * @param name Package name.
+     * @return Canonical package.
+     */
+    public JavaPackage intern(String name) {
+        JavaPackage jPackage = packages.get(name);
+        if (jPackage == null) {
+            jPackage = register(new JavaPackage(name));
+        }
+        return jPackage;
+    }
+
+    /**
+     * Registers the specified package as the canonical package
+     * of its name, unless a package of that name is already
+     * registered.
+     *
+     * @param jPackage Package.
+     * @return Canonical package of the package's name.
+     */
+    public JavaPackage intern(JavaPackage jPackage) {
+        JavaPackage existing = packages.get(jPackage.getName());
+        if (existing == null) {
+            existing = register(jPackage);
+        }
+        return existing;
+    }
+
+    /**
+     * Returns the canonical package of the specified name.
+     *
+     * @param name Package name.
+     * @return Package, or <code>null</code> if the name is unknown.
+     */
+    public JavaPackage lookup(String name) {
+        return packages.get(name);
+    }
+
+    /**
+     * Returns the id of the specified package name. Ids are
+     * assigned in registration order, starting at 0.
+     *
+     * @param name Package name.
+     * @return Id, or -1 if the name is unknown.
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return (id != null) ? id.intValue() : -1;
+    }
+
+    /**
+     * Returns the canonical package of the specified id.
+     *
+     * @param id Package id.
+     * @return Package.
+     */
+    public synchronized JavaPackage getPackage(int id) {
+        return byId.get(id);
+    }
+
+    public int size() {
+        return packages.size();
+    }
+
+    /**
+     * @return The registered packages in id order.
+     */
+    public synchronized Collection<JavaPackage> getPackages() {
+        return Collections.unmodifiableList(new ArrayList<JavaPackage>(byId));
+    }
+
+    private synchronized JavaPackage register(JavaPackage jPackage) {
+        JavaPackage existing = packages.get(jPackage.getName());
+        if (existing != null) {
+            return existing;
+        }
+
+        ids.put(jPackage.getName(), Integer.valueOf(byId.size()));
+        byId.add(jPackage);
+        packages.put(jPackage.getName(), jPackage);
+        return jPackage;
+    }
+}
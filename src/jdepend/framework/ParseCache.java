@@ -0,0 +1,322 @@
+package jdepend.framework;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * The <code>ParseCache</code> class is an on-disk cache of the facts
+ * extracted from class files: the class name, package, abstractness,
+ * source file, imported packages and, for a module descriptor, the
+ * module and its required modules.
+ * <p>
+ * Class files are keyed by path, size and modification time; jar
+ * entries by jar path, entry name, size and CRC; the classes of the
+ * runtime image by URI, size and modification time, so platform
+ * classes are parsed once per runtime. A
+ * <code>JavaClassBuilder</code> using a cache only parses the class
+ * files whose key is not found in the cache.
+ * </p>
+ * <p>
+ * The imported packages of a class depend upon the parser's package
+ * filter, so the cache records a fingerprint of the filter and is
+ * discarded when used with a different filter. Saving the cache only
+ * keeps the entries looked up or added since it was loaded.
+ * </p>
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public class ParseCache {
+
+    private static final int MAGIC = 0x4A445043;
+    private static final int VERSION = 3;
+
+    private final File file;
+    private final Map<String, Entry> loaded;
+    private final Map<String, Entry> used;
+    private String fingerprint;
+
+
+    /**
+     * Constructs a cache stored in the specified file. The cache is
+     * empty until loaded.
+     *
+     * @param file Cache file.
+     */
+    public ParseCache(File file) {
+        this.file = file;
+        this.loaded = new ConcurrentHashMap<String, Entry>();
+        this.used = new ConcurrentHashMap<String, Entry>();
+        this.fingerprint = "";
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the entries saved for the specified filter. A missing
+     * cache file, or one saved with another filter, leaves the cache
+     * empty.
+     *
+     * @param filter Package filter of the parser.
+     * @throws IOException If the cache file cannot be read.
+     */
+    public void load(PackageFilter filter) throws IOException {
+        loaded.clear();
+        used.clear();
+        fingerprint = fingerprint(filter);
+
+        if (!file.isFile()) {
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !readString(in).equals(fingerprint)) {
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                Entry entry = new Entry();
+                entry.name = readString(in);
+                entry.packageName = readString(in);
+                entry.isAbstract = in.readBoolean();
+                entry.sourceFile = readString(in);
+                entry.imports = readStrings(in);
+                entry.moduleName = in.readBoolean() ? readString(in) : null;
+                entry.requiredModules = readStrings(in);
+                loaded.put(key, entry);
+            }
+        } catch (EOFException eofe) {
+            loaded.clear();
+            throw new IOException("Truncated parse cache: " + file.getPath());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the entries looked up or added since the cache was loaded.
+     * The entries are written to a temporary file which then replaces
+     * the cache file, so an interrupted save, or another analysis
+     * saving the same cache, never leaves a partly written cache file.
+     *
+     * @throws IOException If the cache file cannot be written.
+     */
+    public void save() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory: " + parent.getPath());
+        }
+
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            write(temp);
+            try {
+                Files.move(temp.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private void write(File temp) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, fingerprint);
+
+            List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(used.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries) {
+                Entry entry = e.getValue();
+                writeString(out, e.getKey());
+                writeString(out, entry.name);
+                writeString(out, entry.packageName);
+                out.writeBoolean(entry.isAbstract);
+                writeString(out, entry.sourceFile);
+                writeStrings(out, entry.imports);
+                out.writeBoolean(entry.moduleName != null);
+                if (entry.moduleName != null) {
+                    writeString(out, entry.moduleName);
+                }
+                writeStrings(out, entry.requiredModules);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return The number of entries looked up or added since the
+     * cache was loaded.
+     */
+    public int size() {
+        return used.size();
+    }
+
+    /**
+     * Returns the key of the specified class file.
+     */
+    String key(File classFile) {
+        return classFile.getAbsolutePath() + "|" + classFile.length() + "|" + classFile.lastModified();
+    }
+
+    /**
+     * Returns the key of the specified class file of the runtime image.
+     */
+    String key(Path classFile) throws IOException {
+        return classFile.toUri() + "|" + Files.size(classFile) + "|" + Files.getLastModifiedTime(classFile).toMillis();
+    }
+
+    /**
+     * Returns the key of the specified jar entry, or <code>null</code>
+     * if the entry's CRC is unknown.
+     */
+    String key(File jarFile, ZipEntry e) {
+        if (e.getCrc() == -1) {
+            return null;
+        }
+        return jarFile.getAbsolutePath() + "!" + e.getName() + "|" + e.getSize() + "|" + e.getCrc();
+    }
+
+    /**
+     * Returns the class cached under the specified key, with its
+     * packages taken from the specified table.
+     *
+     * @return Cached class, or <code>null</code> if not cached.
+     */
+    JavaClass get(String key, PackageTable table) {
+        if (key == null) {
+            return null;
+        }
+
+        Entry entry = used.get(key);
+        if (entry == null) {
+            entry = loaded.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            used.put(key, entry);
+        }
+
+        JavaClass jClass = new JavaClass(entry.name);
+        jClass.setPackageName(table.intern(entry.packageName).getName());
+        jClass.isAbstract(entry.isAbstract);
+        jClass.setSourceFile(entry.sourceFile);
+        for (String imported : entry.imports) {
+            jClass.addImportedPackage(table.intern(imported));
+        }
+        jClass.setModuleName(entry.moduleName);
+        for (String required : entry.requiredModules) {
+            jClass.addRequiredModule(required);
+        }
+        return jClass;
+    }
+
+    /**
+     * Caches the specified class under the specified key.
+     */
+    void put(String key, JavaClass jClass) {
+        if (key == null) {
+            return;
+        }
+
+        Entry entry = new Entry();
+        entry.name = jClass.getName();
+        entry.packageName = jClass.getPackageName();
+        entry.isAbstract = jClass.isAbstract();
+        entry.sourceFile = jClass.getSourceFile();
+        List<String> imports = new ArrayList<String>();
+        for (JavaPackage imported : jClass.getImportedPackages()) {
+            imports.add(imported.getName());
+        }
+        entry.imports = imports.toArray(new String[imports.size()]);
+        entry.moduleName = jClass.getModuleName();
+        entry.requiredModules = jClass.getRequiredModules().toArray(new String[0]);
+        used.put(key, entry);
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    /**
+     * Reads a string written by <code>writeString()</code>.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt parse cache string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as its length and its UTF-8 bytes, as the
+     * fingerprint of a large filter, or the key of a deeply nested
+     * archive entry, may exceed the 64 KB allowed by
+     * <code>writeUTF()</code>.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String fingerprint(PackageFilter filter) {
+        StringBuilder s = new StringBuilder();
+        for (PackageFilter.Filter f : filter.getFilters()) {
+            s.append(f.include ? '+' : '-').append(f.name).append(',');
+        }
+        return s.toString();
+    }
+
+    private static class Entry {
+        String name;
+        String packageName;
+        boolean isAbstract;
+        String sourceFile;
+        String[] imports;
+        String moduleName;
+        String[] requiredModules;
+    }
+}
@@ -7,6 +7,15 @@ package jdepend.framework;
  * Implementers of this interface register for notification using
  * the <code>JDepend.addParseListener()</code> method.
  * </p>
+ * <p>
+ * A listener is never called concurrently: the calls are made one at a
+ * time, and each call happens-before the next. When classes are parsed
+ * on several threads (see <code>JDepend.setThreadCount()</code>), the
+ * calls are made on the parsing threads rather than on the thread
+ * running the analysis, in no particular order. A listener updating a
+ * user interface should hand the update over to the interface's own
+ * thread, as with <code>SwingUtilities.invokeLater()</code>.
+ * </p>
  *
  * @author <b>Mike Clark</b>
  * @author Clarkware Consulting, Inc.
@@ -0,0 +1,25 @@
+package jdepend.framework;
+
+import java.io.File;
+
+/**
+ * The <code>SourceListener</code> interface defines a listener
+ * notified of the class and jar files found by a
+ * <code>FileManager</code>.
+ *
+ * @author <b>Mike Clark</b>
+ * @author Clarkware Consulting, Inc.
+ */
+
+public interface SourceListener {
+
+    /**
+     * Called for every class, jar, war, or zip file found, as soon
+     * as it is found. Calls are never concurrent, but may come from
+     * different threads.
+     *
+     * @param file Class or jar file.
+     */
+    void onSource(File file);
+
+}
@@ -154,10 +154,14 @@ public class JDepend implements ParserListener {
         jPackage.setAfferents(packages);
         jPackage.setEfferents(packages);
 
+        PackageCycles cycles = analyzer.getPackageCycles();
+
         AfferentNode ah = new AfferentNode(null, jPackage);
+        ah.setPackageCycles(cycles);
         getAfferentTree().setModel(new DependTreeModel(ah));
 
         EfferentNode eh = new EfferentNode(null, jPackage);
+        eh.setPackageCycles(cycles);
         getEfferentTree().setModel(new DependTreeModel(eh));
     }
 
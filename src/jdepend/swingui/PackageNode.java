@@ -2,6 +2,7 @@ package jdepend.swingui;
 
 import jdepend.framework.JavaPackage;
 import jdepend.framework.PackageComparator;
+import jdepend.framework.PackageCycles;
 
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -25,6 +26,8 @@ public abstract class PackageNode {
 
     private List<PackageNode> children;
 
+    private PackageCycles cycles;
+
     private static NumberFormat formatter;
 
     static {
@@ -63,6 +66,31 @@ public abstract class PackageNode {
         return parent;
     }
 
+    /**
+     * Sets the package dependency cycles of the analyzed packages, which
+     * this node and its descendants use to tell whether their packages
+     * are cyclic.
+     *
+     * @param cycles Package cycles, or <code>null</code> to have each
+     *               package analyze its own cycles.
+     */
+    public void setPackageCycles(PackageCycles cycles) {
+        this.cycles = cycles;
+    }
+
+    /**
+     * Returns the package dependency cycles set on this node or its
+     * nearest ancestor.
+     *
+     * @return Package cycles, or <code>null</code> if none were set.
+     */
+    public PackageCycles getPackageCycles() {
+        if (cycles == null && parent != null) {
+            return parent.getPackageCycles();
+        }
+        return cycles;
+    }
+
     /**
      * Indicates whether this node is a leaf node.
      *
@@ -143,7 +171,8 @@ public abstract class PackageNode {
         label.append("I: " + format(getPackage().instability()) + "  ");
         label.append("D: " + format(getPackage().distance()) + "  ");
         label.append("V: " + getPackage().getVolatility());
-        if (getPackage().containsCycle()) {
+        PackageCycles packageCycles = getPackageCycles();
+        if ((packageCycles != null) ? packageCycles.containsCycle(getPackage()) : getPackage().containsCycle()) {
             label.append(" Cyclic");
         }
 
@@ -3,8 +3,11 @@ package jdepend.textui;
 import jdepend.framework.JavaClass;
 import jdepend.framework.JavaPackage;
 import jdepend.framework.PackageComparator;
+import jdepend.framework.PackageCycles;
 import jdepend.framework.PackageFilter;
+import jdepend.framework.ParseCache;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
@@ -14,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.StringTokenizer;
 
 /**
  * The <code>JDepend</code> class analyzes directories of Java class files,
@@ -82,6 +86,46 @@ public class JDepend {
         analyzer.setComponents(components);
     }
 
+    /**
+     * Sets the number of worker threads used to parse the class files.
+     *
+     * @param threadCount Number of worker threads.
+     */
+    public void setThreadCount(int threadCount) {
+        analyzer.setThreadCount(threadCount);
+    }
+
+    /**
+     * Sets the file caching the classes parsed by previous runs.
+     *
+     * @param cacheFile Cache file.
+     */
+    public void setParseCache(File cacheFile) {
+        analyzer.setParseCache(new ParseCache(cacheFile));
+    }
+
+    /**
+     * Sets how deeply archives nested in jar, war, or zip files are analyzed.
+     *
+     * @param archiveDepth Nesting depth, or 0 to ignore nested archives.
+     */
+    public void setArchiveDepth(int archiveDepth) {
+        analyzer.setArchiveDepth(archiveDepth);
+    }
+
+    /**
+     * Restricts the modules analyzed from the runtime image and from jmod
+     * files to the specified modules.
+     *
+     * @param modules Comma-separated list of module names.
+     */
+    public void setModules(String modules) {
+        StringTokenizer st = new StringTokenizer(modules, ",");
+        while (st.hasMoreTokens()) {
+            analyzer.addModule(st.nextToken().trim());
+        }
+    }
+
     /**
      * Adds the specified directory name to the collection of directories to be
      * analyzed.
@@ -223,19 +267,29 @@ public class JDepend {
     protected void printCycles(Collection<JavaPackage> packages) {
         printCyclesHeader();
 
+        PackageCycles cycles = analyzer.getPackageCycles();
         for (JavaPackage aPackage : packages) {
-            printCycle(aPackage);
+            if (cycles.containsCycle(aPackage)) {
+                printCycle(aPackage, cycles);
+            }
         }
 
         printCyclesFooter();
     }
 
     protected void printCycle(JavaPackage jPackage) {
+        PackageCycles cycles = analyzer.getPackageCycles();
+        if (cycles.getComponent(jPackage) == null) {
+            // The package was not analyzed.
+            cycles = new PackageCycles(Collections.singleton(jPackage));
+        }
+        printCycle(jPackage, cycles);
+    }
 
-        List<JavaPackage> list = new ArrayList<JavaPackage>();
-        jPackage.collectCycle(list);
+    private void printCycle(JavaPackage jPackage, PackageCycles cycles) {
 
-        if (!jPackage.containsCycle()) {
+        List<JavaPackage> list = new ArrayList<JavaPackage>();
+        if (!cycles.collectCycle(jPackage, list)) {
             return;
         }
 
@@ -434,6 +488,8 @@ public class JDepend {
         System.err.println("");
         System.err.println("usage: ");
         System.err.println(baseUsage + "[-components <components>]" +
+                " [-threads <count>] [-cache <cache file>] [-nested <depth>]" +
+                " [-modules <modules>]" +
                 " [-file <output file>] <directory> " +
                 "[directory2 [directory 3] ...]");
         System.exit(1);
@@ -467,6 +523,34 @@ public class JDepend {
                         usage("Components not specified.");
                     }
                     setComponents(args[++i]);
+                } else if (args[i].equalsIgnoreCase("-threads")) {
+                    if (args.length <= i + 1) {
+                        usage("Thread count not specified.");
+                    }
+                    try {
+                        setThreadCount(Integer.parseInt(args[++i]));
+                    } catch (IllegalArgumentException iae) {
+                        usage("Invalid thread count: " + args[i]);
+                    }
+                } else if (args[i].equalsIgnoreCase("-cache")) {
+                    if (args.length <= i + 1) {
+                        usage("Cache file not specified.");
+                    }
+                    setParseCache(new File(args[++i]));
+                } else if (args[i].equalsIgnoreCase("-nested")) {
+                    if (args.length <= i + 1) {
+                        usage("Archive depth not specified.");
+                    }
+                    try {
+                        setArchiveDepth(Integer.parseInt(args[++i]));
+                    } catch (IllegalArgumentException iae) {
+                        usage("Invalid archive depth: " + args[i]);
+                    }
+                } else if (args[i].equalsIgnoreCase("-modules")) {
+                    if (args.length <= i + 1) {
+                        usage("Modules not specified.");
+                    }
+                    setModules(args[++i]);
                 } else {
                     usage("Invalid argument: " + args[i]);
                 }
@@ -4,8 +4,16 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
@@ -175,6 +183,104 @@ public class ClassFileParserTest extends JDependTestCase {
 
     }
     
+    @Test
+    public void testByteBuffer() throws IOException {
+        File f = new File(getTestBuildDir() + getPackageSubDir() + "ExampleConcreteClass.class");
+        byte[] bytes = Files.readAllBytes(f.toPath());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+        buffer.put(new byte[]{1, 2, 3}).put(bytes).flip();
+        buffer.position(3);
+
+        JavaClass clazz = parser.parse(buffer);
+
+        assertEquals(3, buffer.position());
+        assertEquals("jdepend.framework.ExampleConcreteClass", clazz.getName());
+        assertEquals("ExampleConcreteClass.java", clazz.getSourceFile());
+        assertEquals(19, clazz.getImportedPackages().size());
+    }
+
+    @Test
+    public void testSharedPackages() throws IOException {
+        File concrete = new File(getTestBuildDir() + getPackageSubDir() + "ExampleConcreteClass.class");
+        File abstractClass = new File(getTestBuildDir() + getPackageSubDir() + "ExampleAbstractClass.class");
+
+        JavaClass a = parser.parse(concrete);
+        JavaClass b = parser.parse(abstractClass);
+
+        PackageTable table = parser.getPackageTable();
+        JavaPackage lang = table.lookup("java.lang");
+        assertNotNull(lang);
+        assertTrue(a.getImportedPackages().contains(lang));
+        assertTrue(b.getImportedPackages().contains(lang));
+        for (JavaPackage imported : a.getImportedPackages()) {
+            assertSame(table.intern(imported.getName()), imported);
+        }
+        assertSame(a.getPackageName(), b.getPackageName());
+        assertSame(lang, table.getPackage(table.getId("java.lang")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedClassFile() throws IOException {
+        File f = new File(getTestBuildDir() + getPackageSubDir() + "ExampleConcreteClass.class");
+        byte[] bytes = Files.readAllBytes(f.toPath());
+
+        parser.parse(ByteBuffer.wrap(bytes, 0, bytes.length / 2));
+    }
+
+    @Test
+    public void testTruncatedClassFileMessage() throws IOException {
+        File f = new File(getTestBuildDir() + getPackageSubDir() + "ExampleConcreteClass.class");
+        byte[] bytes = Files.readAllBytes(f.toPath());
+
+        try {
+            parser.parse(ByteBuffer.wrap(bytes, 0, bytes.length / 2));
+            fail("Should raise IOException");
+        } catch (IOException expected) {
+            assertEquals("Truncated class file", expected.getMessage());
+        }
+
+        try {
+            parser.parse(ByteBuffer.wrap(bytes, 0, bytes.length / 2), "a.jar!/a/A.class");
+            fail("Should raise IOException");
+        } catch (IOException expected) {
+            assertEquals("Truncated class file: a.jar!/a/A.class", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testConcurrentParses() throws Exception {
+
+        final File[] files = {
+                new File(getTestBuildDir() + getPackageSubDir() + "ExampleInterface.class"),
+                new File(getTestBuildDir() + getPackageSubDir() + "ExampleAbstractClass.class"),
+                new File(getTestBuildDir() + getPackageSubDir() + "ExampleConcreteClass.class")
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<JavaClass>> results = new ArrayList<Future<JavaClass>>();
+            for (int i = 0; i < 60; i++) {
+                final File f = files[i % files.length];
+                results.add(executor.submit(new Callable<JavaClass>() {
+                    public JavaClass call() throws IOException {
+                        return parser.parse(f);
+                    }
+                }));
+            }
+
+            int[] expectedImports = {6, 7, 19};
+            for (int i = 0; i < results.size(); i++) {
+                JavaClass clazz = results.get(i).get();
+                assertEquals("jdepend.framework." + files[i % files.length].getName().replace(".class", ""),
+                        clazz.getName());
+                assertEquals(expectedImports[i % files.length], clazz.getImportedPackages().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testExampleClassFileFromTimDrury() throws IOException {
         // see http://github.com/clarkware/jdepend/issues#issue/1
@@ -185,5 +291,42 @@ public class ClassFileParserTest extends JDependTestCase {
     public void testExampleClassFile2() throws IOException {
         parser.parse(ClassFileParser.class.getResourceAsStream("/data/example_class2.bin"));
     }
+
+    @Test
+    public void testModuleDescriptor() throws IOException {
+        JavaClass clazz = parser.parse(ClassFileParser.class.getResourceAsStream("/data/corpus_java17_module_info.bin"));
+
+        assertTrue(clazz.isModule());
+        assertEquals("example.corpus", clazz.getModuleName());
+        assertEquals(Arrays.asList("java.base", "java.sql", "java.logging"),
+                new ArrayList<String>(clazz.getRequiredModules()));
+
+        Collection imports = clazz.getImportedPackages();
+        assertTrue(imports.contains(new JavaPackage("corpus")));
+        assertTrue(imports.contains(new JavaPackage("corpus.api")));
+    }
+
+    @Test
+    public void testRecordClass() throws IOException {
+        JavaClass clazz = parser.parse(ClassFileParser.class.getResourceAsStream("/data/corpus_java17_record.bin"));
+
+        assertFalse(clazz.isModule());
+        assertEquals("corpus.Point", clazz.getName());
+        assertEquals("Point.java", clazz.getSourceFile());
+
+        Collection imports = clazz.getImportedPackages();
+        assertTrue(imports.contains(new JavaPackage("corpus.api")));
+        assertTrue(imports.contains(new JavaPackage("java.time")));
+        assertTrue(imports.contains(new JavaPackage("java.util")));
+        assertTrue(imports.contains(new JavaPackage("java.lang.runtime")));
+    }
+
+    @Test
+    public void testDynamicConstant() throws IOException {
+        JavaClass clazz = parser.parse(ClassFileParser.class.getResourceAsStream("/data/corpus_java21_condy.bin"));
+
+        assertEquals("corpus.Timeout", clazz.getName());
+        assertTrue(clazz.getImportedPackages().contains(new JavaPackage("java.lang.invoke")));
+    }
 }
 
@@ -4,7 +4,9 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -56,16 +58,60 @@ public class ComponentTest extends JDependTestCase {
         assertJavaxPackage();
     }
     
+    @Test
+    public void testComponentPatterns() throws IOException {
+
+        jdepend.setComponents("jdepend.*,junit");
+
+        jdepend.addDirectory(getBuildDir());
+        jdepend.analyze();
+
+        assertNotNull(jdepend.getPackage("jdepend.framework"));
+        assertNull(jdepend.getPackage("jdepend.framework.exceptions"));
+        assertTrue(jdepend.getPackage("jdepend.textui").getEfferents().contains(jdepend.getPackage("jdepend.framework")));
+    }
+
+    @Test
+    public void testComponentIndex() {
+        List<String> components = new ArrayList<String>();
+        components.add("a");
+        components.add("a.b");
+        components.add("c.*");
+        components.add("c.d");
+        components.add("e.f");
+        components.add("e.*");
+        components.add("regex:g\\.h\\w*");
+        for (int i = 0; i < 5000; i++) {
+            components.add("org.example.m" + i);
+        }
+
+        ComponentIndex index = new ComponentIndex(components);
+
+        assertEquals("a", index.toComponent("a.b.c"));
+        assertEquals("a", index.toComponent("a.b"));
+        assertEquals("a", index.toComponent("a"));
+        assertEquals("c.d", index.toComponent("c.d.e"));
+        assertEquals("c.x", index.toComponent("c.x.y.z"));
+        assertEquals("e.f", index.toComponent("e.f.g"));
+        assertEquals("e.h", index.toComponent("e.h.i"));
+        assertEquals("g.hi", index.toComponent("g.hi.j.k"));
+        assertEquals("g.hi", index.toComponent("g.hi"));
+        assertEquals("org.example.m4321", index.toComponent("org.example.m4321.util"));
+        assertEquals("org.example.m4321", index.toComponent("org.example.m4321"));
+        assertEquals("org.example.m50000.util", index.toComponent("org.example.m50000.util"));
+        assertSame(index.toComponent("org.example.m7.x"), index.toComponent("org.example.m7.x"));
+    }
+
     private void assertJDependPackage() {
         JavaPackage p = jdepend.getPackage("jdepend");
         assertEquals("jdepend", p.getName());
-        assertEquals(40, p.getConcreteClassCount());
-        assertEquals(9, p.getAbstractClassCount());
+        assertEquals(49, p.getConcreteClassCount());
+        assertEquals(12, p.getAbstractClassCount());
         assertEquals(0, p.afferentCoupling());
         assertEquals(5, p.efferentCoupling());
-        assertEquals(format(0.18f), format(p.abstractness()));
+        assertEquals(format(0.20f), format(p.abstractness()));
         assertEquals("1", format(p.instability()));
-        assertEquals(format(0.18f), format(p.distance()));
+        assertEquals(format(0.20f), format(p.distance()));
         assertEquals(1, p.getVolatility());
 
         Collection efferents = p.getEfferents();
@@ -3,6 +3,7 @@ package jdepend.framework;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -34,6 +35,26 @@ public class CycleTest extends JDependTestCase {
         assertListEquals(bCycles, new String[]{});
     }
 	
+	@Test
+    public void testRollUpCycle() {
+
+        JavaPackage ax = new JavaPackage("a.x");
+        JavaPackage aw = new JavaPackage("a.w");
+        JavaPackage by = new JavaPackage("b.y");
+        JavaPackage bz = new JavaPackage("b.z");
+
+        ax.dependsUpon(by);
+        bz.dependsUpon(aw);
+
+        PackageRollUp rollUp = new PackageRollUp(Arrays.asList(ax, aw, by, bz));
+        assertFalse(rollUp.getPackageCycles(2).hasCycles());
+        assertTrue(rollUp.getPackageCycles(1).hasCycles());
+        assertTrue(rollUp.getPackage(1, "a").containsCycle());
+        assertEquals(1, rollUp.getPackage(1, "a").efferentCoupling());
+        assertEquals("a", PackageRollUp.toLevel("a.x", 1));
+        assertEquals("a.x", PackageRollUp.toLevel("a.x", 3));
+    }
+
 	@Test
     public void test2Node1BranchCycle() {
 
@@ -180,6 +201,157 @@ public class CycleTest extends JDependTestCase {
         assertListEquals(eCycles, new String[]{"E", "A", "B", "C", "A" });
     }
 
+	@Test
+    public void testStronglyConnectedComponents() {
+
+        JavaPackage a = new JavaPackage("A");
+        JavaPackage b = new JavaPackage("B");
+        JavaPackage c = new JavaPackage("C");
+        JavaPackage d = new JavaPackage("D");
+        JavaPackage e = new JavaPackage("E");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+        c.dependsUpon(b);
+        c.dependsUpon(d);
+        e.dependsUpon(a);
+
+        PackageCycles cycles = new PackageCycles(Arrays.asList(a, b, c, d, e));
+
+        assertEquals(4, cycles.getComponents().size());
+        assertEquals(1, cycles.getCycles().size());
+        assertListEquals(cycles.getCycles().get(0), new String[]{"B", "C" });
+        assertSame(cycles.getComponent(b), cycles.getComponent(c));
+        assertListEquals(cycles.getComponents().get(0), new String[]{"D" });
+
+        assertTrue(cycles.hasCycles());
+        assertTrue(cycles.isInCycle(b));
+        assertFalse(cycles.isInCycle(a));
+        assertTrue(cycles.containsCycle(a));
+        assertTrue(cycles.containsCycle(e));
+        assertFalse(cycles.containsCycle(d));
+    }
+
+	@Test
+    public void testDeepChain() {
+
+        List<JavaPackage> chain = new ArrayList<JavaPackage>();
+        for (int i = 0; i < 100000; i++) {
+            chain.add(new JavaPackage("P" + i));
+            if (i > 0) {
+                chain.get(i - 1).dependsUpon(chain.get(i));
+            }
+        }
+        chain.get(chain.size() - 1).dependsUpon(chain.get(chain.size() - 2));
+
+        JavaPackage first = chain.get(0);
+        assertEquals(true, first.containsCycle());
+
+        List<JavaPackage> cycle = new ArrayList<JavaPackage>();
+        assertEquals(true, first.collectCycle(cycle));
+        assertEquals(100001, cycle.size());
+        assertEquals("P99998", cycle.get(cycle.size() - 1).getName());
+    }
+
+	@Test
+    public void testDenseGraph() {
+
+        List<JavaPackage> packages = new ArrayList<JavaPackage>();
+        for (int i = 0; i < 40; i++) {
+            packages.add(new JavaPackage("P" + i));
+        }
+        for (int from = 0; from < packages.size(); from++) {
+            for (int to = from + 1; to < packages.size(); to++) {
+                packages.get(from).dependsUpon(packages.get(to));
+            }
+        }
+
+        PackageCycles cycles = new PackageCycles(packages);
+        assertFalse(cycles.hasCycles());
+        assertEquals(40, cycles.getComponents().size());
+        assertEquals(false, packages.get(0).containsCycle());
+
+        packages.get(39).dependsUpon(packages.get(0));
+        cycles = new PackageCycles(packages);
+        assertEquals(1, cycles.getCycles().size());
+        assertEquals(40, cycles.getCycles().get(0).size());
+    }
+
+	@Test
+    public void testEnumerateCycles() {
+
+        JavaPackage a = new JavaPackage("A");
+        JavaPackage b = new JavaPackage("B");
+        JavaPackage c = new JavaPackage("C");
+        JavaPackage d = new JavaPackage("D");
+        JavaPackage e = new JavaPackage("E");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+        c.dependsUpon(a);
+
+        a.dependsUpon(d);
+        d.dependsUpon(e);
+        e.dependsUpon(a);
+
+        List<List<JavaPackage>> cycles = new CycleEnumerator(Arrays.asList(a)).getCycles();
+
+        assertEquals(2, cycles.size());
+        assertListEquals(cycles.get(0), new String[]{"A", "B", "C" });
+        assertListEquals(cycles.get(1), new String[]{"A", "D", "E" });
+    }
+
+	@Test
+    public void testEnumerateCyclesWithLimits() {
+
+        List<JavaPackage> packages = completeGraph(4);
+
+        CycleEnumerator enumerator = new CycleEnumerator(packages);
+        assertEquals(20, enumerator.getCycles().size());
+
+        enumerator.setMaxCycleLength(2);
+        assertEquals(6, enumerator.getCycles().size());
+        enumerator.setMaxCycleLength(3);
+        assertEquals(14, enumerator.getCycles().size());
+
+        final List<List<JavaPackage>> reported = new ArrayList<List<JavaPackage>>();
+        enumerator = new CycleEnumerator(packages);
+        enumerator.setMaxCycles(5);
+        assertFalse(enumerator.enumerate(new CycleListener() {
+            public void onCycle(List<JavaPackage> cycle) {
+                reported.add(cycle);
+            }
+        }));
+        assertEquals(5, reported.size());
+    }
+
+	@Test
+    public void testEnumerateCyclesWithTimeLimit() {
+
+        CycleEnumerator enumerator = new CycleEnumerator(completeGraph(14));
+        enumerator.setTimeLimit(100);
+
+        long start = System.currentTimeMillis();
+        assertFalse(enumerator.enumerate(new CycleListener() {
+            public void onCycle(List<JavaPackage> cycle) {
+            }
+        }));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    private List<JavaPackage> completeGraph(int size) {
+        List<JavaPackage> packages = new ArrayList<JavaPackage>();
+        for (int i = 0; i < size; i++) {
+            packages.add(new JavaPackage("P" + i));
+        }
+        for (JavaPackage from : packages) {
+            for (JavaPackage to : packages) {
+                from.dependsUpon(to);
+            }
+        }
+        return packages;
+    }
+
     protected void assertListEquals(List<JavaPackage> list, String names[]) {
 
         assertEquals(names.length, list.size());
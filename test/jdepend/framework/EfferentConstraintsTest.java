@@ -3,6 +3,9 @@ package jdepend.framework;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -90,6 +93,63 @@ public class EfferentConstraintsTest extends JDependTestCase {
 		}
 	}
 
+	@Test
+	public void testShouldThrowExcetionRuleWithGlob() throws IOException {
+
+		jdepend.addDirectory(getBuildDir());
+		jdepend.analyze();
+
+		EfferentConstraints constraints = new EfferentConstraints();
+		constraints.addPackage("jdepend.textui").shouldNotDependUpon("jdepend.*ui");
+		constraints.addPackage("jdepend.textui").shouldNotDependUpon("jdepend.**.framework");
+
+		try {
+			jdepend.areProhibitionRulesFulfilled(constraints);
+			fail("Forbidden efferent not found");
+		} catch (ForbidenEfferentException ex) {
+			assertTrue(ex.getMessage().contains("jdepend.**.framework"));
+		}
+	}
+
+	@Test
+	public void testShouldFindPatternConstraints() {
+		EfferentConstraints constraints = new EfferentConstraints();
+		constraints.addPackage("jdepend.xx").shouldNotDependUpon("jdepend.yy");
+		constraints.addPackage("jdepend.*").shouldNotDependUpon("jdepend.zz");
+		constraints.addPackage("jdepend.**").shouldNotDependUpon("jdepend.ww");
+
+		assertEquals(3, constraints.findPackagesWithRestriction("jdepend.xx").size());
+		assertEquals("jdepend.xx", constraints.findPackageWithRestriction("jdepend.xx").getName());
+		assertEquals("jdepend.*", constraints.findPackageWithRestriction("jdepend.x").getName());
+		assertEquals(1, constraints.findPackagesWithRestriction("jdepend").size());
+		assertNull(constraints.findPackageWithRestriction("junit"));
+	}
+
+	@Test
+	public void testShouldFindAllViolations() throws IOException {
+
+		jdepend.addDirectory(getBuildDir());
+		jdepend.analyze();
+
+		EfferentConstraints constraints = new EfferentConstraints();
+		constraints.addPackage("jdepend.*ui").shouldNotDependUpon("jdepend.framework");
+		constraints.addPackage("jdepend.textui").shouldNotDependUpon("java.io");
+		constraints.addPackage("jdepend.framework").shouldNotDependUpon("jdepend.*ui");
+
+		List<EfferentConstraints.Violation> violations = jdepend.findProhibitionRuleViolations(constraints);
+
+		List<String> found = new ArrayList<String>();
+		for (EfferentConstraints.Violation violation : violations) {
+			found.add(violation.getPackage().getName() + ">" + violation.getEfferent().getName());
+		}
+		assertTrue(found.contains("jdepend.textui>jdepend.framework"));
+		assertTrue(found.contains("jdepend.swingui>jdepend.framework"));
+		assertTrue(found.contains("jdepend.xmlui>jdepend.framework"));
+		assertTrue(found.contains("jdepend.textui>java.io"));
+		assertEquals(4, violations.size());
+		assertEquals(violations.size(), new HashSet<String>(found).size());
+	}
+
 	public void testShouldPass() throws IOException, ForbidenEfferentException {
 
 		jdepend.addDirectory(getBuildDir());
@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -39,7 +42,27 @@ public class FileManagerTest extends JDependTestCase {
 	public void testBuildDirectory() throws IOException {
 		fileManager.addDirectory(getBuildDir());
 		fileManager.addDirectory(getTestBuildDir());
-		assertEquals(51, fileManager.extractFiles().size());
+		assertEquals(63, fileManager.extractFiles().size());
+	}
+
+	@Test
+	public void testParallelDiscovery() throws IOException {
+		fileManager.addDirectory(getBuildDir());
+		fileManager.addDirectory(getTestBuildDir());
+		fileManager.addDirectory(getBuildDir());
+		List<File> expected = new ArrayList<File>(fileManager.extractFiles());
+
+		fileManager.setThreadCount(3);
+		final List<File> discovered = new ArrayList<File>();
+		fileManager.discover(new SourceListener() {
+			public void onSource(File file) {
+				discovered.add(file);
+			}
+		});
+
+		assertEquals(expected, new ArrayList<File>(fileManager.extractFiles()));
+		assertEquals(expected.size(), discovered.size());
+		assertEquals(new HashSet<File>(expected), new HashSet<File>(discovered));
 	}
 
 	@Test(expected = IOException.class)
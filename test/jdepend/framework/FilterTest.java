@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -73,6 +74,120 @@ public class FilterTest extends JDependTestCase {
         assertFalse(filter.accept("a.c"));
     }
 
+    @Test
+    public void testFirstMatchAmongManyEntries() {
+        PackageFilter filter = PackageFilter.all();
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            String name = "com.acme.p" + (i % 37) + (i % 2 == 0 ? "" : ".sub" + i);
+            names.add(name);
+            if (i % 3 == 0) {
+                filter.including(name);
+            } else {
+                filter.excluding(name + "*");
+            }
+        }
+        filter.excluding("com.acme").including("java.lang").excluding("java");
+
+        names.add("com.acme");
+        names.add("com.acme.other");
+        names.add("com.acme.p1x");
+        names.add("java.lang.reflect");
+        names.add("java.util");
+        names.add("javax.swing");
+        names.add("org.example");
+        for (String name : names) {
+            assertEquals(name, acceptLinearly(filter, name), filter.accept(name));
+            assertEquals(name, acceptLinearly(filter, name), filter.accept(name));
+        }
+    }
+
+    @Test
+    public void testAddAfterAccept() {
+        PackageFilter filter = PackageFilter.all().excluding("a.b");
+        assertTrue(filter.accept("a.c"));
+        assertFalse(filter.accept("a.b.c"));
+
+        filter.excluding("a");
+        assertFalse(filter.accept("a.c"));
+        filter.excludingRest();
+        assertFalse(filter.accept("b"));
+    }
+
+    @Test
+    public void testGlobEntries() {
+        PackageFilter filter = PackageFilter.all()
+                .excluding("com.acme.**.internal.**")
+                .excluding("com.acme.*.impl")
+                .including("com.acme.*")
+                .excluding("regex:org\\.example\\.v[0-9]+")
+                .excludingRest();
+
+        assertFalse(filter.accept("com.acme.internal"));
+        assertFalse(filter.accept("com.acme.billing.internal"));
+        assertFalse(filter.accept("com.acme.billing.tax.internal.rates"));
+        assertTrue(filter.accept("com.acme.billing.internals"));
+        assertFalse(filter.accept("com.acme.billing.impl"));
+        assertTrue(filter.accept("com.acme.billing.tax.impl"));
+        assertTrue(filter.accept("com.acme.billing"));
+        assertFalse(filter.accept("org.example.v2"));
+        assertFalse(filter.accept("org.example"));
+        assertEquals(5, filter.getFilters().size());
+        assertEquals("com.acme.", new ArrayList<PackageFilter.Filter>(filter.getFilters()).get(2).name);
+    }
+
+    @Test
+    public void testPackageMatcher() {
+        PackageMatcher matcher = new PackageMatcher("**.internal", "a.*.c", "a.b*", "regex:a\\.[xy]", "**");
+
+        assertEquals(0, matcher.match("internal"));
+        assertEquals(0, matcher.match("a.b.internal"));
+        assertEquals(1, matcher.match("a.b.c"));
+        assertEquals(2, matcher.match("a.bc"));
+        assertEquals(2, matcher.match("a.b.c.d"));
+        assertEquals(3, matcher.match("a.x"));
+        assertEquals(4, matcher.match("a.z"));
+        assertEquals(4, matcher.match(""));
+
+        assertArrayEquals(new int[] {0, 2, 4}, matcher.matchAll("a.b.internal"));
+        assertArrayEquals(new int[] {3, 4}, matcher.matchAll("a.y"));
+
+        PackageMatcher exact = new PackageMatcher("a.b", "c.**");
+        assertTrue(exact.matches("a.b"));
+        assertFalse(exact.matches("a.bc"));
+        assertFalse(exact.matches("a.b.c"));
+        assertTrue(exact.matches("c"));
+        assertTrue(exact.matches("c.d.e"));
+        assertFalse(exact.matches("cd"));
+    }
+
+    @Test
+    public void testPackageMatcherRoots() {
+        PackageMatcher matcher = new PackageMatcher("a.b", "a", "c.*", "regex:d\\.[0-9]");
+
+        assertEquals(3, matcher.matchRoot("a.b.c"));
+        assertEquals(1, matcher.matchRoot("a.b"));
+        assertEquals(1, matcher.matchRoot("a.bc"));
+        assertEquals(3, matcher.matchRoot("c.d.e.f"));
+        assertEquals(-1, matcher.matchRoot("c.d"));
+        assertEquals(3, matcher.matchRoot("d.1.x"));
+        assertEquals(-1, matcher.matchRoot("e.f"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRegex() {
+        new PackageMatcher("regex:(");
+    }
+
+    private boolean acceptLinearly(PackageFilter filter, String packageName) {
+        for (PackageFilter.Filter f : filter.getFilters()) {
+            if (packageName.startsWith(f.name)) {
+                return f.include;
+            }
+        }
+        return true;
+    }
+
     private void assertFiltersExist(PackageFilter filter) {
         assertFalse(filter.accept("java.lang"));
         assertFalse(filter.accept("javax.ejb"));
@@ -3,10 +3,27 @@ package jdepend.framework;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -131,6 +148,514 @@ public class JarFileParserTest extends JDependTestCase {
         assertEquals(8, jdepend.countClasses());
     }
 
+    @Test
+    public void testClassInventory() throws IOException {
+
+        FileManager fm = new FileManager();
+        fm.addDirectory(getTestDataDir());
+
+        JavaClassBuilder builder = new JavaClassBuilder(fm);
+        ClassInventory inventory = builder.inventory();
+
+        assertEquals(10, inventory.getClassCount());
+        assertTrue(inventory.isJarFile(jarFile));
+        assertEquals(5, inventory.getClassCount(jarFile));
+        assertEquals(5, inventory.getEntries(jarFile).size());
+
+        int built = 0;
+        for (Collection<JavaClass> classes : builder.build(inventory).values()) {
+            built += classes.size();
+        }
+        assertEquals(inventory.getClassCount(), built);
+
+        JDepend jdepend = new JDepend();
+        jdepend.addDirectory(getTestDataDir());
+        int count = jdepend.countClasses();
+        jdepend.analyze();
+        assertEquals(count, jdepend.countClasses());
+    }
+
+    @Test
+    public void testNestedArchives() throws IOException {
+
+        File dir = Files.createTempDirectory("jdepend").toFile();
+        File warFile = new File(dir, "test.war");
+        File zipFile = new File(dir, "test.zip");
+        try {
+            writeArchive(warFile, "WEB-INF/lib/test.jar", Files.readAllBytes(jarFile.toPath()));
+            writeArchive(zipFile, "test.war", Files.readAllBytes(warFile.toPath()));
+
+            JavaClassBuilder builder = new JavaClassBuilder();
+            assertEquals(0, builder.buildClasses(warFile).size());
+
+            builder.setArchiveDepth(1);
+            Collection<JavaClass> classes = builder.buildClasses(warFile);
+            assertEquals(5, classes.size());
+            assertClassesExist(classes);
+            for (JavaClass jClass : classes) {
+                assertEquals(warFile.getPath() + "!/WEB-INF/lib/test.jar", jClass.getArchive());
+            }
+            assertEquals(0, builder.buildClasses(zipFile).size());
+
+            builder.setArchiveDepth(2);
+            classes = builder.buildClasses(zipFile);
+            assertEquals(5, classes.size());
+            for (JavaClass jClass : classes) {
+                assertEquals(zipFile.getPath() + "!/test.war!/WEB-INF/lib/test.jar", jClass.getArchive());
+            }
+
+            JDepend jdepend = new JDepend();
+            jdepend.addDirectory(warFile.getPath());
+            jdepend.setArchiveDepth(1);
+            jdepend.setThreadCount(4);
+            jdepend.analyze();
+            JavaPackage jPackage = jdepend.getPackage("jdepend.framework");
+            assertEquals(5, jPackage.getClassCount());
+            assertEquals(Arrays.asList(warFile.getPath() + "!/WEB-INF/lib/test.jar"),
+                    new ArrayList<String>(jPackage.getArchives()));
+        } finally {
+            warFile.delete();
+            zipFile.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testMultiReleaseJar() throws IOException {
+
+        File classes = new File(getTestBuildDir() + getPackageSubDir());
+        byte[] concreteClass = Files.readAllBytes(new File(classes, "ExampleConcreteClass.class").toPath());
+        byte[] abstractClass = Files.readAllBytes(new File(classes, "ExampleAbstractClass.class").toPath());
+        byte[] interfaceClass = Files.readAllBytes(new File(classes, "ExampleInterface.class").toPath());
+        byte[] moduleInfo = Files.readAllBytes(new File(getTestDataDir(), "corpus_java17_module_info.bin").toPath());
+
+        File multiReleaseJar = File.createTempFile("jdepend", ".jar");
+        File plainJar = File.createTempFile("jdepend", ".jar");
+        try {
+            // The release 11 variant is told apart by its content.
+            Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+            entries.put("module-info.class", moduleInfo);
+            entries.put("jdepend/framework/ExampleConcreteClass.class", concreteClass);
+            entries.put("META-INF/versions/11/jdepend/framework/ExampleConcreteClass.class", abstractClass);
+            entries.put("META-INF/versions/17/jdepend/framework/ExampleInterface.class", interfaceClass);
+            writeJar(multiReleaseJar, true, entries);
+            writeJar(plainJar, false, entries);
+
+            FileManager fm = new FileManager();
+            JavaClassBuilder builder = new JavaClassBuilder(fm);
+            assertEquals(Arrays.asList("module example.corpus", "jdepend.framework.ExampleConcreteClass"),
+                    names(builder.buildClasses(multiReleaseJar)));
+
+            fm.setTargetRelease(11);
+            assertEquals(Arrays.asList("module example.corpus", "jdepend.framework.ExampleAbstractClass"),
+                    names(builder.buildClasses(multiReleaseJar)));
+
+            fm.setTargetRelease(17);
+            assertEquals(Arrays.asList("module example.corpus", "jdepend.framework.ExampleAbstractClass",
+                    "jdepend.framework.ExampleInterface"),
+                    names(builder.buildClasses(multiReleaseJar)));
+            assertEquals(2, new ClassInventory(Arrays.asList(multiReleaseJar), fm).getClassCount());
+
+            assertEquals(Arrays.asList("module example.corpus", "jdepend.framework.ExampleConcreteClass"),
+                    names(builder.buildClasses(plainJar)));
+
+            JDepend jdepend = new JDepend();
+            jdepend.addDirectory(multiReleaseJar.getPath());
+            jdepend.analyze();
+            assertEquals(1, jdepend.getModules().size());
+            assertEquals("example.corpus", jdepend.getModules().iterator().next().getModuleName());
+            assertNull(jdepend.getPackage("Default"));
+        } finally {
+            multiReleaseJar.delete();
+            plainJar.delete();
+        }
+    }
+
+    private List<String> names(Collection<JavaClass> classes) {
+        List<String> names = new ArrayList<String>();
+        for (JavaClass jClass : classes) {
+            names.add(jClass.isModule() ? "module " + jClass.getModuleName() : jClass.getName());
+        }
+        return names;
+    }
+
+    private void writeJar(File file, boolean multiRelease, Map<String, byte[]> entries) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (multiRelease) {
+            manifest.getMainAttributes().putValue("Multi-Release", "true");
+        }
+
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest);
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeArchive(File file, String entryName, byte[] content) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry(entryName));
+            out.write(content);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testParallelBuild() throws IOException {
+
+        FileManager fm = new FileManager();
+        fm.addDirectory(getBuildDir());
+        fm.addDirectory(jarFile.getPath());
+
+        JavaClassBuilder sequential = new JavaClassBuilder(fm);
+        JavaClassBuilder parallel = new JavaClassBuilder(fm);
+        parallel.setThreadCount(4);
+
+        List<JavaClass> expected = new ArrayList<JavaClass>(sequential.build());
+        List<JavaClass> actual = new ArrayList<JavaClass>(parallel.build());
+
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(new ArrayList<JavaPackage>(expected.get(i).getImportedPackages()),
+                    new ArrayList<JavaPackage>(actual.get(i).getImportedPackages()));
+        }
+    }
+
+    @Test
+    public void testParallelBuildListener() throws IOException {
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final List<JavaClass> parsed = new ArrayList<JavaClass>();
+
+        ClassFileParser parser = new ClassFileParser(PackageFilter.all());
+        parser.addParseListener(new ParserListener() {
+            public void onParsedJavaClass(JavaClass parsedClass) {
+                if (active.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                Thread.yield();
+                parsed.add(parsedClass);
+                active.decrementAndGet();
+            }
+        });
+
+        FileManager fm = new FileManager();
+        fm.addDirectory(getBuildDir());
+        JavaClassBuilder builder = new JavaClassBuilder(parser, fm);
+        builder.setThreadCount(4);
+
+        Collection<JavaClass> classes = builder.build();
+        assertEquals(0, overlaps.get());
+        assertEquals(new HashSet<JavaClass>(classes), new HashSet<JavaClass>(parsed));
+    }
+
+    @Test(timeout = 20000)
+    public void testPipelineParserFailure() throws IOException {
+
+        byte[] concreteClass = Files.readAllBytes(
+                new File(getTestBuildDir() + getPackageSubDir() + "ExampleConcreteClass.class").toPath());
+
+        // More files than the pipeline queues hold, so discovery blocks
+        // once the failed worker stops taking them.
+        File dir = Files.createTempDirectory("jdepend").toFile();
+        try {
+            for (int i = 0; i < 600; i++) {
+                Files.write(new File(dir, "Example" + i + ".class").toPath(), concreteClass);
+            }
+
+            ClassFileParser parser = new ClassFileParser(PackageFilter.all()) {
+                public JavaClass parse(File classFile) throws IOException {
+                    throw new IllegalStateException("Parser failure");
+                }
+            };
+            FileManager fm = new FileManager();
+            fm.addDirectory(dir.getPath());
+            JavaClassBuilder builder = new JavaClassBuilder(parser, fm);
+
+            try {
+                builder.build(new BuildListener() {
+                    public void onBuiltClass(File source, JavaClass jClass) {
+                    }
+                });
+                fail("Should raise IllegalStateException");
+            } catch (IllegalStateException expected) {
+                assertEquals("Parser failure", expected.getMessage());
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testTruncatedEntry() throws IOException {
+
+        File classes = new File(getTestBuildDir() + getPackageSubDir());
+        byte[] concreteClass = Files.readAllBytes(new File(classes, "ExampleConcreteClass.class").toPath());
+        byte[] abstractClass = Files.readAllBytes(new File(classes, "ExampleAbstractClass.class").toPath());
+        byte[] interfaceClass = Files.readAllBytes(new File(classes, "ExampleInterface.class").toPath());
+
+        File dir = Files.createTempDirectory("jdepend").toFile();
+        File truncatedJar = new File(dir, "truncated.jar");
+        File truncatedClass = new File(dir, "Truncated.class");
+        try {
+            Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+            entries.put("jdepend/framework/ExampleConcreteClass.class", concreteClass);
+            entries.put("jdepend/framework/ExampleAbstractClass.class", Arrays.copyOf(abstractClass, 40));
+            entries.put("jdepend/framework/ExampleInterface.class", interfaceClass);
+            writeJar(truncatedJar, false, entries);
+            Files.write(truncatedClass.toPath(), Arrays.copyOf(concreteClass, 40));
+
+            List<File> files = Arrays.asList(truncatedJar, truncatedClass);
+            JavaClassBuilder sequential = new JavaClassBuilder();
+            JavaClassBuilder parallel = new JavaClassBuilder();
+            parallel.setThreadCount(4);
+
+            Map<File, Collection<JavaClass>> expected = sequential.build(files);
+            Map<File, Collection<JavaClass>> actual = parallel.build(files);
+
+            assertEquals(Arrays.asList(truncatedJar), new ArrayList<File>(expected.keySet()));
+            assertEquals(Arrays.asList("jdepend.framework.ExampleConcreteClass", "jdepend.framework.ExampleInterface"),
+                    names(expected.get(truncatedJar)));
+            assertEquals(expected.keySet(), actual.keySet());
+            assertEquals(names(expected.get(truncatedJar)), names(actual.get(truncatedJar)));
+
+            try {
+                sequential.buildClasses(truncatedJar);
+                fail("Should raise IOException");
+            } catch (IOException ioe) {
+                assertEquals("Truncated class file: " + truncatedJar.getPath()
+                        + "!/jdepend/framework/ExampleAbstractClass.class", ioe.getMessage());
+            }
+        } finally {
+            truncatedJar.delete();
+            truncatedClass.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testParseCache() throws IOException {
+
+        FileManager fm = new FileManager();
+        fm.addDirectory(getBuildDir());
+        fm.addDirectory(jarFile.getPath());
+
+        File cacheFile = File.createTempFile("jdepend", ".cache");
+        cacheFile.delete();
+        try {
+            ParseCache cache = new ParseCache(cacheFile);
+            cache.load(PackageFilter.all());
+            JavaClassBuilder builder = new JavaClassBuilder(fm);
+            builder.setParseCache(cache);
+            List<JavaClass> expected = new ArrayList<JavaClass>(builder.build());
+            cache.save();
+            assertEquals(expected.size(), cache.size());
+
+            final int[] parsed = new int[1];
+            final int[] notified = new int[1];
+            ClassFileParser parser = new ClassFileParser(PackageFilter.all()) {
+                public JavaClass parse(File classFile) throws IOException {
+                    parsed[0]++;
+                    return super.parse(classFile);
+                }
+            };
+            parser.addParseListener(new ParserListener() {
+                public void onParsedJavaClass(JavaClass parsedClass) {
+                    notified[0]++;
+                }
+            });
+
+            cache = new ParseCache(cacheFile);
+            cache.load(PackageFilter.all());
+            builder = new JavaClassBuilder(parser, fm);
+            builder.setParseCache(cache);
+            List<JavaClass> actual = new ArrayList<JavaClass>(builder.build());
+
+            assertEquals(0, parsed[0]);
+            assertEquals(expected.size(), notified[0]);
+            assertEquals(expected, actual);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPackageName(), actual.get(i).getPackageName());
+                assertEquals(expected.get(i).isAbstract(), actual.get(i).isAbstract());
+                assertEquals(expected.get(i).getSourceFile(), actual.get(i).getSourceFile());
+                assertEquals(new HashSet<JavaPackage>(expected.get(i).getImportedPackages()),
+                        new HashSet<JavaPackage>(actual.get(i).getImportedPackages()));
+            }
+
+            cache = new ParseCache(cacheFile);
+            cache.load(PackageFilter.all().excluding("java.*"));
+            builder = new JavaClassBuilder(parser, fm);
+            builder.setParseCache(cache);
+            builder.build();
+            assertTrue(parsed[0] > 0);
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    @Test
+    public void testParseCacheReplacedOnSave() throws IOException {
+
+        File dir = Files.createTempDirectory("jdepend").toFile();
+        File cacheFile = new File(dir, "jdepend.cache");
+        try {
+            ParseCache cache = new ParseCache(cacheFile);
+            cache.load(PackageFilter.all());
+            JavaClassBuilder builder = new JavaClassBuilder();
+            builder.setParseCache(cache);
+            builder.buildClasses(jarFile);
+            cache.save();
+            cache.save();
+
+            assertEquals(Arrays.asList(cacheFile.getName()), Arrays.asList(dir.list()));
+            cache = new ParseCache(cacheFile);
+            cache.load(PackageFilter.all());
+            builder.setParseCache(cache);
+            builder.buildClasses(jarFile);
+            assertEquals(5, cache.size());
+        } finally {
+            cacheFile.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testParseCacheWithLargeFilter() throws IOException {
+
+        List<String> excluded = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            excluded.add("org.excluded.generated.package" + i);
+        }
+        PackageFilter filter = PackageFilter.all().excluding(excluded);
+
+        File dir = Files.createTempDirectory("jdepend").toFile();
+        File cacheFile = new File(dir, "jdepend.cache");
+        try {
+            ParseCache cache = new ParseCache(cacheFile);
+            cache.load(filter);
+            JavaClassBuilder builder = new JavaClassBuilder(new ClassFileParser(filter), new FileManager());
+            builder.setParseCache(cache);
+            builder.buildClasses(jarFile);
+            cache.save();
+
+            final int[] parsed = new int[1];
+            ClassFileParser parser = new ClassFileParser(filter) {
+                public JavaClass parse(ByteBuffer buffer, String name) throws IOException {
+                    parsed[0]++;
+                    return super.parse(buffer, name);
+                }
+            };
+            cache = new ParseCache(cacheFile);
+            cache.load(filter);
+            builder = new JavaClassBuilder(parser, new FileManager());
+            builder.setParseCache(cache);
+            builder.buildClasses(jarFile);
+            assertEquals(0, parsed[0]);
+            assertEquals(5, cache.size());
+        } finally {
+            cacheFile.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testRuntimeImage() throws IOException {
+
+        FileManager fm = new FileManager();
+        fm.addDirectory("jrt:/");
+        fm.addModule("java.sql");
+        fm.addModule("java.logg*");
+
+        List<File> sources = new ArrayList<File>(fm.extractFiles());
+        assertEquals(2, sources.size());
+        assertTrue(fm.isRuntimeModule(sources.get(0)));
+        assertEquals(Arrays.asList("jrt:/java.logging", "jrt:/java.sql"),
+                Arrays.asList(sources.get(0).getPath(), sources.get(1).getPath()));
+
+        JavaClassBuilder builder = new JavaClassBuilder(fm);
+        Collection<JavaClass> classes = builder.build();
+        assertEquals(builder.countClasses() + 2, classes.size());
+        assertTrue(classes.contains(new JavaClass("java.sql.Connection")));
+        assertTrue(classes.contains(new JavaClass("java.util.logging.Logger")));
+        for (JavaClass jClass : classes) {
+            if (jClass.getName().equals("java.sql.Connection")) {
+                assertEquals("jrt:/java.sql", jClass.getArchive());
+            }
+        }
+
+        builder.setThreadCount(4);
+        assertEquals(new ArrayList<JavaClass>(classes), new ArrayList<JavaClass>(builder.build()));
+
+        JDepend jdepend = new JDepend();
+        jdepend.addDirectory("jrt:/java.sql");
+        jdepend.analyze();
+        assertEquals(1, jdepend.getModules().size());
+        JavaClass descriptor = jdepend.getModules().iterator().next();
+        assertEquals("java.sql", descriptor.getModuleName());
+        assertTrue(descriptor.getRequiredModules().contains("java.logging"));
+        assertEquals(Collections.singleton("jrt:/java.sql"), jdepend.getPackage("java.sql").getArchives());
+        assertTrue(jdepend.getPackage("java.sql").getEfferents().contains(jdepend.getPackage("java.util.logging")));
+    }
+
+    @Test
+    public void testRuntimeModulePatterns() throws IOException {
+
+        FileManager fm = new FileManager();
+        fm.addDirectory("jrt:/");
+        fm.addModule("java.*ging");
+        fm.addModule("regex:java\\.(sql|xml)");
+
+        List<String> names = new ArrayList<String>();
+        for (File source : fm.extractFiles()) {
+            assertTrue(fm.isRuntimeModule(source));
+            names.add(source.getPath());
+        }
+        assertEquals(Arrays.asList("jrt:/java.logging", "jrt:/java.sql", "jrt:/java.xml"), names);
+        assertFalse(fm.acceptModule("java.logging.extra"));
+
+        assertFalse(fm.isRuntimeModule(new File("jrt:/java.sql")));
+        assertTrue(fm.extractFiles(new File("jrt:/java.sql")).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidRuntimeModule() throws IOException {
+        new FileManager().addDirectory("jrt:/no.such.module");
+    }
+
+    @Test
+    public void testJmodFile() throws IOException {
+        File jmods = new File(System.getProperty("java.home"), "jmods");
+        Assume.assumeTrue(new File(jmods, "java.sql.jmod").isFile());
+
+        FileManager fm = new FileManager();
+        fm.addDirectory(jmods.getPath());
+        fm.addModule("java.sql");
+        Collection<File> sources = fm.extractFiles();
+        assertEquals(Collections.singleton(new File(jmods, "java.sql.jmod")), sources);
+
+        JavaClassBuilder builder = new JavaClassBuilder(fm);
+        Collection<JavaClass> classes = builder.build();
+        assertEquals(builder.countClasses() + 1, classes.size());
+        assertTrue(classes.contains(new JavaClass("java.sql.Connection")));
+
+        FileManager image = new FileManager();
+        image.addDirectory("jrt:/java.sql");
+        assertEquals(new HashSet<JavaClass>(new JavaClassBuilder(image).build()), new HashSet<JavaClass>(classes));
+    }
+
     private void assertClassesExist(Collection classes) {
         assertTrue(classes.contains(new JavaClass(
                 "jdepend.framework.ExampleAbstractClass")));
@@ -2,7 +2,9 @@ package jdepend.framework;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -68,4 +70,38 @@ public class JavaPackageTest {
 		comx.isAnyForbidenEfferentPresent(Arrays.asList(comzuStar));
 	}
 	
+	@Test
+	public void testShouldReportFirstForbidenEffrent() {
+		JavaPackage comx = new JavaPackage("com.x");
+		JavaPackage comzStar = new JavaPackage("com.z.*");
+		JavaPackage comzu = new JavaPackage("com.z.u");
+		comx.dependsUpon(new JavaPackage("com.z.u"));
+
+		try {
+			comx.isAnyForbidenEfferentPresent(Arrays.asList(comzStar, comzu));
+			fail("Should raise ForbidenEfferentException");
+		} catch (ForbidenEfferentException expected) {
+			assertTrue(expected.getMessage().contains("com.z.*"));
+		}
+		assertSame(comzStar.getNameMatcher(), comzStar.getNameMatcher());
+	}
+
+	@Test
+	public void testCouplingKeepsInsertionOrderWithoutDuplicates() {
+		JavaPackage hub = new JavaPackage("com.util");
+		List<JavaPackage> clients = new ArrayList<JavaPackage>();
+		for (int i = 0; i < 5000; i++) {
+			JavaPackage client = new JavaPackage("com.client" + i);
+			client.dependsUpon(hub);
+			client.dependsUpon(new JavaPackage("com.util"));
+			clients.add(client);
+		}
+		hub.dependsUpon(hub);
+
+		assertEquals(5000, hub.afferentCoupling());
+		assertEquals(0, hub.efferentCoupling());
+		assertEquals(clients, new ArrayList<JavaPackage>(hub.getAfferents()));
+		assertEquals(1, clients.get(0).efferentCoupling());
+	}
+
 }
@@ -2,8 +2,17 @@ package jdepend.framework;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.junit.After;
 import org.junit.Before;
@@ -46,8 +55,99 @@ public class MetricTest extends JDependTestCase {
         assertAnalyzePackages();
     }
 
+    @Test
+    public void testPackageGraph() throws IOException {
+        jdepend.addDirectory(getBuildDir());
+        jdepend.addDirectory(getTestBuildDir());
+        jdepend.analyze();
+
+        PackageGraph graph = jdepend.getPackageGraph();
+        PackageCycles cycles = jdepend.getPackageCycles();
+
+        assertEquals(jdepend.countPackages(), graph.size());
+        assertEquals(-1, graph.getId("no.such.package"));
+        for (JavaPackage p : jdepend.getPackages()) {
+            int id = graph.getId(p.getName());
+            assertEquals(p.getName(), graph.getName(id));
+            assertEquals(p.getConcreteClassCount(), graph.getConcreteClassCount(id));
+            assertEquals(p.getAbstractClassCount(), graph.getAbstractClassCount(id));
+            assertEquals(p.afferentCoupling(), graph.afferentCoupling(id));
+            assertEquals(p.efferentCoupling(), graph.efferentCoupling(id));
+            assertEquals(p.abstractness(), graph.abstractness(id), 0);
+            assertEquals(p.instability(), graph.instability(id), 0);
+            assertEquals(p.distance(), graph.distance(id), 0);
+            assertEquals(p.containsCycle(), graph.containsCycle(id));
+            assertEquals(cycles.containsCycle(p), graph.containsCycle(id));
+            assertEquals(cycles.isInCycle(p), graph.isInCycle(id));
+
+            int i = 0;
+            int[] efferents = graph.getEfferents(id);
+            for (JavaPackage efferent : p.getEfferents()) {
+                assertEquals(efferent.getName(), graph.getName(efferents[i++]));
+            }
+        }
+        assertEquals(jdepend.containsCycles(), graph.hasCycles());
+
+        assertSame(cycles, jdepend.getPackageCycles());
+        jdepend.analyze();
+        assertNotSame(cycles, jdepend.getPackageCycles());
+    }
+
+    @Test
+    public void testPackageCyclesFollowCouplings() {
+        JDepend analyzer = new JDepend(PackageFilter.all());
+        JavaPackage a = analyzer.addPackage("a");
+        JavaPackage b = analyzer.addPackage("b");
+
+        a.dependsUpon(b);
+        assertFalse(analyzer.containsCycles());
+        PackageCycles cycles = analyzer.getPackageCycles();
+        assertSame(cycles, analyzer.getPackageCycles());
+
+        b.dependsUpon(a);
+        assertTrue(analyzer.containsCycles());
+        assertNotSame(cycles, analyzer.getPackageCycles());
+        assertTrue(analyzer.getPackageCycles().isInCycle(a));
+    }
+
+    @Test
+    public void testRollUp() throws IOException {
+        jdepend.addDirectory(getBuildDir());
+        jdepend.analyze();
+
+        PackageRollUp rollUp = jdepend.getRollUp();
+        assertEquals(3, rollUp.getDepth());
+
+        for (JavaPackage p : jdepend.getPackages()) {
+            JavaPackage same = rollUp.getPackage(rollUp.getDepth(), p.getName());
+            assertEquals(p.getClassCount(), same.getClassCount());
+            assertEquals(p.afferentCoupling(), same.afferentCoupling());
+            assertEquals(p.efferentCoupling(), same.efferentCoupling());
+            assertEquals(format(p.distance()), format(same.distance()));
+        }
+
+        int classes = 0;
+        for (JavaPackage p : jdepend.getPackages()) {
+            if (p.getName().startsWith("jdepend.")) {
+                classes += p.getClassCount();
+            }
+        }
+        JavaPackage top = rollUp.getPackage(1, "jdepend");
+        assertEquals(classes, top.getClassCount());
+        assertEquals(0, top.afferentCoupling());
+        assertFalse(top.getEfferents().contains(top));
+        assertNull(rollUp.getPackage(1, "jdepend.framework"));
+
+        JavaPackage framework = rollUp.getPackage(2, "jdepend.framework");
+        assertEquals(jdepend.getPackage("jdepend.framework").getClassCount()
+                + jdepend.getPackage("jdepend.framework.exceptions").getClassCount(), framework.getClassCount());
+        assertTrue(framework.getAfferents().contains(rollUp.getPackage(2, "jdepend.textui")));
+        assertFalse(rollUp.getPackageCycles(2).isInCycle(framework));
+        assertSame(framework, rollUp.getPackage(2, "jdepend.framework"));
+    }
+
     private void assertAnalyzePackages() {
-        assertEquals(57, jdepend.countClasses());
+        assertEquals(69, jdepend.countClasses());
 
         PackageFilter filter = jdepend.getFilter().excluding("junit.*");
 
@@ -63,13 +163,13 @@ public class MetricTest extends JDependTestCase {
         JavaPackage p = jdepend.getPackage("jdepend.framework");
         assertNotNull(p);
 
-        assertEquals(28, p.getConcreteClassCount());
-        assertEquals(7, p.getAbstractClassCount());
+        assertEquals(37, p.getConcreteClassCount());
+        assertEquals(10, p.getAbstractClassCount());
         assertEquals(3, p.afferentCoupling());
         assertEquals(7, p.efferentCoupling());
-        assertEquals(format(0.2f), format(p.abstractness()));
+        assertEquals(format(0.21f), format(p.abstractness()));
         assertEquals(format(0.7f), format(p.instability()));
-        assertEquals(format(0.1f), format(p.distance()));
+        assertEquals(format(0.09f), format(p.distance()));
         assertEquals(1, p.getVolatility());
     }
 
@@ -135,6 +235,130 @@ public class MetricTest extends JDependTestCase {
         assertEquals(7, analyzedPkg.getConcreteClassCount());
     }
 
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        File dir = Files.createTempDirectory("jdepend").toFile();
+        File classes = new File(getTestBuildDir() + getPackageSubDir());
+        try {
+            copy(new File(classes, "ExampleInterface.class"), new File(dir, "a"));
+            copy(new File(classes, "ExampleAbstractClass.class"), new File(dir, "a"));
+
+            jdepend.addDirectory(dir.getPath());
+            jdepend.analyze();
+            assertEquals(snapshot(analyzed(dir)), snapshot(jdepend));
+
+            File added = new File(dir, "b");
+            copy(new File(classes, "ExampleConcreteClass.class"), added);
+            copy(new File(classes, "p2/ExampleEnum.class"), added);
+            jdepend.update(Arrays.asList(added), Collections.<File>emptyList());
+            assertEquals(snapshot(analyzed(dir)), snapshot(jdepend));
+            assertNotNull(jdepend.getPackage("jdepend.framework.p2"));
+
+            File removed = new File(added, "ExampleEnum.class");
+            removed.delete();
+            jdepend.update(Collections.<File>emptyList(), Arrays.asList(removed));
+            assertEquals(snapshot(analyzed(dir)), snapshot(jdepend));
+
+            jdepend.update(Collections.<File>emptyList(), Arrays.asList(added));
+            assertEquals(snapshot(analyzed(new File(dir, "a"))), snapshot(jdepend));
+
+            jdepend.analyze();
+            jdepend.analyze();
+            assertEquals(snapshot(analyzed(dir)), snapshot(jdepend));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testComponentsChangedBetweenAnalyses() throws IOException {
+        jdepend.addDirectory(getBuildDir());
+        jdepend.analyze();
+
+        jdepend.setComponents("jdepend");
+        jdepend.analyze();
+
+        JDepend fresh = new JDepend(jdepend.getFilter());
+        fresh.analyzeInnerClasses(false);
+        fresh.addDirectory(getBuildDir());
+        fresh.setComponents("jdepend");
+        fresh.analyze();
+        assertEquals(snapshot(fresh), snapshot(jdepend));
+        assertNull(jdepend.getPackage("jdepend.framework"));
+
+        jdepend.setComponents("jdepend.framework,jdepend.textui");
+        jdepend.setFilter(jdepend.getFilter().excluding("jdepend.swingui"));
+        jdepend.analyze();
+
+        fresh = new JDepend(jdepend.getFilter());
+        fresh.analyzeInnerClasses(false);
+        fresh.addDirectory(getBuildDir());
+        fresh.setComponents("jdepend.framework,jdepend.textui");
+        fresh.analyze();
+        assertEquals(snapshot(fresh), snapshot(jdepend));
+    }
+
+    @Test
+    public void testPipelinedAnalysis() throws IOException {
+        jdepend.addDirectory(getBuildDir());
+        jdepend.addDirectory(getTestBuildDir());
+        jdepend.analyze();
+        Map<String, String> expected = snapshot(jdepend);
+
+        JDepend pipelined = new JDepend(jdepend.getFilter());
+        pipelined.analyzeInnerClasses(false);
+        pipelined.addDirectory(getBuildDir());
+        pipelined.addDirectory(getTestBuildDir());
+        pipelined.setPipelined(true);
+        pipelined.analyze();
+        assertEquals(expected, snapshot(pipelined));
+
+        pipelined.setThreadCount(4);
+        pipelined.analyze();
+        assertEquals(expected, snapshot(pipelined));
+    }
+
+    private JDepend analyzed(File dir) throws IOException {
+        JDepend fresh = new JDepend(jdepend.getFilter());
+        fresh.analyzeInnerClasses(false);
+        fresh.addDirectory(dir.getPath());
+        fresh.analyze();
+        return fresh;
+    }
+
+    private Map<String, String> snapshot(JDepend analyzer) {
+        Map<String, String> snapshot = new TreeMap<String, String>();
+        for (JavaPackage p : analyzer.getPackages()) {
+            snapshot.put(p.getName(), p.getClassCount() + " " + p.getAbstractClassCount()
+                    + " " + names(p.getEfferents()) + " " + names(p.getAfferents())
+                    + " " + p.containsCycle());
+        }
+        return snapshot;
+    }
+
+    private Set<String> names(Collection<JavaPackage> packages) {
+        Set<String> names = new TreeSet<String>();
+        for (JavaPackage p : packages) {
+            names.add(p.getName());
+        }
+        return names;
+    }
+
+    private void copy(File file, File dir) throws IOException {
+        dir.mkdirs();
+        Files.copy(file.toPath(), new File(dir, file.getName()).toPath());
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
     private String format(float f) {
         return formatter.format(f);
     }